@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.Main;
+
+/**
+ * <p>The per-line cost of a command: splitting the line, option parsing, <code>SubCommand</code> dispatch and
+ * <code>CmdBase.init</code>. The commands used, <code>agent list</code> and <code>broker status</code>, don't do anything
+ * yet so only the dispatch machinery is measured.</p>
+ * @author John Churin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+	private static final String LINE = "broker status --sort";
+	private Main main;
+	private String[] fullArgs;
+	private String[] abbreviatedArgs;
+	private Options options;
+	private DefaultParser parser;
+	private CommandLine commandLine;
+	private InitOnly initOnly;
+
+	/**
+	 * Exposes CmdBase.init without doing anything else
+	 */
+	static class InitOnly extends CmdBase {
+		InitOnly() {
+			super(null);
+		}
+		void run( CommandLine commandLine ) {
+			init(commandLine, 2);
+		}
+	}
+
+	@Setup
+	public void setup() throws ParseException {
+		main = new Main();
+		fullArgs = new String[] {"agent", "list"};
+		abbreviatedArgs = new String[] {"br", "st"};
+		options = new Options();
+		options.addOption(null, "sort", false, "Sort");
+		parser = new DefaultParser(true);
+		commandLine = parser.parse(options, new String[] {"topic", "print", "a", "b", "c"});
+		initOnly = new InitOnly();
+	}
+
+	@Benchmark
+	public String[] splitLine() {
+		return LINE.split(" ");
+	}
+
+	@Benchmark
+	public CommandLine parseOptions() throws ParseException {
+		return parser.parse(options, LINE.split(" "));
+	}
+
+	@Benchmark
+	public void parseAndDispatch() {
+		main.parse(fullArgs, false);
+	}
+
+	@Benchmark
+	public void parseAndDispatchAbbreviated() {
+		main.parse(abbreviatedArgs, false);
+	}
+
+	@Benchmark
+	public void cmdBaseInit( Blackhole bh ) {
+		initOnly.run(commandLine);
+		bh.consume(initOnly);
+	}
+}
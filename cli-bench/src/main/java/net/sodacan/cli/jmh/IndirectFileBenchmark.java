@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sodacan.cli.Main;
+
+/**
+ * Running a script of commands with <code>-I</code>. The script mixes comments, blank lines and
+ * commands that don't do anything yet so that reading, parsing and dispatch are what's measured.
+ * @author John Churin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndirectFileBenchmark {
+	private static final String[] COMMANDS = new String[] {
+			"agent list",
+			"agent status",
+			"broker list # trailing comment",
+			"br st",
+			"# a comment line",
+			"",
+	};
+
+	@Param({"100", "10000"})
+	public int lines;
+
+	private Main main;
+	private Path script;
+
+	@Setup
+	public void setup() throws IOException {
+		main = new Main();
+		List<String> content = new ArrayList<>(lines);
+		for (int l = 0; l < lines; l++) {
+			content.add(COMMANDS[l % COMMANDS.length]);
+		}
+		script = Files.createTempFile("soda-bench-", ".sci");
+		Files.write(script, content);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(script);
+	}
+
+	@Benchmark
+	public void openAndExecute() {
+		main.openAndExecute(script.toString());
+	}
+}
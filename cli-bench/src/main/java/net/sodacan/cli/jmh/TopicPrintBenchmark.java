@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.jmh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sodacan.cli.Main;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * <p>Reading a whole topic from the <code>memory</code> message bus: a raw <code>MBTopic.snapshot()</code>
+ * compared with <code>topic print</code>, reduced and with <code>--all</code>. Output is discarded.</p>
+ * <p>The topic has <code>records</code> records spread over <code>keys</code> keys.</p>
+ * @author John Churin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopicPrintBenchmark {
+	private static final String MODE = "test";
+	private static final String TOPIC = "bench-print";
+	private static final String CONFIG = String.join("\n",
+			"location:",
+			"    latitude: 42.5583482",
+			"    longitude: -123.3968023",
+			"    address: 123 Elm Street",
+			"    timezone: America/Los_Angeles",
+			"modes:",
+			"    - name: " + MODE,
+			"      messageBus:",
+			"        pluginType: memory",
+			"      tickSource:",
+			"        pluginType: memory",
+			"      clock:",
+			"        pluginType: static",
+			"");
+
+	@Param({"100000"})
+	public int records;
+
+	@Param({"1000", "100000"})
+	public int keys;
+
+	private Main main;
+	private MB mb;
+	private Path config;
+	private PrintStream savedOut;
+
+	@Setup
+	public void setup() throws IOException {
+		config = Files.createTempFile("soda-bench-", ".yaml");
+		Files.writeString(config, CONFIG);
+		main = new Main();
+		main.setupConfig(config.toString());
+		main.setupMode(MODE);
+		mb = net.sodacan.mode.Mode.getInstance().getMB();
+		mb.createTopic(TOPIC, false);
+		for (int r = 0; r < records; r++) {
+			mb.produce(TOPIC, "key-" + (r % keys), "value-" + r);
+		}
+		savedOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		System.setOut(savedOut);
+		mb.deleteTopic(TOPIC);
+		Files.deleteIfExists(config);
+	}
+
+	@Benchmark
+	public Map<String, MBRecord> snapshot() {
+		return mb.openTopic(TOPIC, 0).snapshot();
+	}
+
+	@Benchmark
+	public void topicPrint() {
+		main.parse(new String[] {"topic", "print", TOPIC, "--limit", Integer.toString(records)}, false);
+	}
+
+	@Benchmark
+	public void topicPrintAll() {
+		main.parse(new String[] {"topic", "print", TOPIC, "--all", "--limit", Integer.toString(records)}, false);
+	}
+}
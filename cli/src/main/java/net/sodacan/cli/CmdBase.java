@@ -14,22 +14,28 @@
  */
 package net.sodacan.cli;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLine;
 
 import net.sodacan.SodacanException;
 import net.sodacan.api.topic.Initialize;
+import net.sodacan.cli.cache.CachedModule;
+import net.sodacan.cli.cache.ModuleCache;
+import net.sodacan.cli.exec.ExecutorStrategy;
+import net.sodacan.cli.output.OutputPipeline;
+import net.sodacan.cli.reduce.SpillBudget;
+import net.sodacan.cli.sort.ExternalSorter;
 import net.sodacan.config.Config;
 import net.sodacan.mode.Mode;
 
@@ -39,7 +45,7 @@ import net.sodacan.mode.Mode;
  *
  */
 public abstract class CmdBase {
-	protected static ExecutorService executorService = Executors.newCachedThreadPool();
+	private static volatile ExecutorStrategy executorStrategy = new ExecutorStrategy(ExecutorStrategy.AUTO);
 
 	private CommandLine commandLine;
 	private List<String> remainingArguments;
@@ -51,6 +57,36 @@ public abstract class CmdBase {
 	protected CmdBase( CommandContext cc ) {
 		this.cc = cc;
 	}
+
+	/**
+	 * Choose what runs follows and module runtimes, see {@link ExecutorStrategy}. Tasks already started
+	 * stay where they are.
+	 * @param spec auto, virtual, platform or platform:n
+	 */
+	public static void setExecutorStrategy( String spec ) {
+		executorStrategy = new ExecutorStrategy(spec);
+	}
+
+	/**
+	 * @return The executor for long running background tasks, follows and module runtimes
+	 */
+	protected static ExecutorService getExecutorService() {
+		return executorStrategy.getExecutorService();
+	}
+
+	/**
+	 * @return The executor for short background tasks, such as writing output, which must not wait behind follows and modules
+	 */
+	protected static ExecutorService getShortTaskExecutor() {
+		return executorStrategy.getShortTaskExecutor();
+	}
+
+	/**
+	 * @return Which executor is in use
+	 */
+	public static String getExecutorDescription() {
+		return executorStrategy.getDescription();
+	}
 	
 	/**
 	 * Save common arguments and recreate command line commands
@@ -91,6 +127,21 @@ public abstract class CmdBase {
 		futures.put(followName, future);
 	}
 
+	/**
+	 * Claim a name for a future about to be added: the base name or, if that is taken, base-2, base-3 and so on.
+	 * The name is held by a placeholder until addFuture replaces it, so two commands can't pick the same one.
+	 * @param baseName
+	 * @return The name claimed
+	 */
+	public String reserveFutureName(String baseName) {
+		Future<?> placeholder = new CompletableFuture<Void>();
+		String name = baseName;
+		for (int n = 2; futures.putIfAbsent(name, placeholder)!=null; n++) {
+			name = baseName + "-" + n;
+		}
+		return name;
+	}
+
 	/**
 	 * Return a list of follows
 	 * @return an  unordered list of follow names
@@ -103,6 +154,14 @@ public abstract class CmdBase {
 		return list;
 	}
 
+	/**
+	 * @param futureName
+	 * @return The named future, or null if there is no such future
+	 */
+	public Future<?> getFuture(String futureName) {
+		return futures.get(futureName);
+	}
+
 	/**
 	 * Close and remove a follows from the list
 	 * @param followName
@@ -137,24 +196,65 @@ public abstract class CmdBase {
 	 * <p>We're not concerned with the last kind just yet. But they shouldn't e confused 
 	 * with the mode we are operating now, the concern of this method. The mode specified in the command line (or defaulted). 
 	 * is limited to selecting one of the BaseModes defined in the configuration.</p>
-	 * <p>We don't set the mode in thread storage. That can be done by the caller who is aware of
-	 * the lifecycle of the thread local setting</p>
+	 * <p>The first call configures the modes, see {@link CommandContext#ensureMode()}, and
+	 * the session mode is set in thread storage for the calling thread.</p>
 
 	 * @return The selected mode, or null
 	 */
 	protected Mode needMode() {
+		cc.ensureMode();
 		return Mode.getInstance();
 	}
 
+	/**
+	 * Get a module with its variables restored, to show them. A cached module doesn't see changes made by
+	 * anyone else, so the state is replayed every time unless <code>--cache-ttl</code> is given.
+	 * Synchronize on the result while using it.
+	 * @param mode
+	 * @param moduleName
+	 * @return The module
+	 */
+	protected CachedModule needModuleToRead( Mode mode, String moduleName ) {
+		return needModule(mode, moduleName, 0);
+	}
+
+	/**
+	 * Get a module with its variables restored, to change them. The session's cached copy is used when it
+	 * is younger than <code>--cache-ttl</code> seconds, default 60, so a run of variable sets replays the
+	 * state topic once. Synchronize on the result while using it.
+	 * @param mode
+	 * @param moduleName
+	 * @return The module
+	 */
+	protected CachedModule needModuleToWrite( Mode mode, String moduleName ) {
+		return needModule(mode, moduleName, 60);
+	}
+
+	private CachedModule needModule( Mode mode, String moduleName, long defaultTtl ) {
+		long ttl = needLongOption("cache-ttl", defaultTtl);
+		if (ttl < 0) {
+			throw new SodacanException(commandName + " --cache-ttl must not be negative");
+		}
+		return ModuleCache.getInstance().get(mode, moduleName, ttl * 1_000_000_000L);
+	}
+
 	/**
 	 * If a command needs a file to be specified, we get it here.
 	 * @param offset specifies the relative position of the filename, zero is the most common.
 	 * @return Path containing the fully qualified file name.
 	 */
 	protected Path needPath(int offset) {
-		File file = new File(needArg(offset,"path name"));
-		return file.toPath();
+		return RequestContext.current().resolvePath(needArg(offset,"path name"));
 	}
+	/**
+	 * Get the file named by an option, for reading
+	 * @param option The long name of the option
+	 * @return The file name, resolved for this request, or "-" for stdin
+	 */
+	protected String needInputOption( String option ) {
+		return RequestContext.current().resolveInput(commandLine.getOptionValue(option));
+	}
+
 	/**
 	 * The number of command line arguments past the command(s)
 	 * @return The number of arguments left on the command line
@@ -189,6 +289,123 @@ public abstract class CmdBase {
 		return Integer.parseInt(needArg(index, argName));
 	}
 
+	/**
+	 * The <code>--all</code> option asks for every record rather than the latest record per key
+	 * @return true if the output should not be reduced
+	 */
+	protected boolean isAll() {
+		return commandLine.hasOption("all");
+	}
+
+	/**
+	 * Get a numeric option from the command line
+	 * @param option The long name of the option
+	 * @param defaultValue Value to use if the option is not specified
+	 * @return The value of the option
+	 */
+	protected long needLongOption(String option, long defaultValue) {
+		if (!commandLine.hasOption(option)) {
+			return defaultValue;
+		}
+		String value = commandLine.getOptionValue(option);
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new SodacanException(commandName + " invalid number for --" + option + ": " + value);
+		}
+	}
+
+	/**
+	 * Setup the output window from the <code>--start</code> and <code>--limit</code> options.
+	 * @return An OutputWindow, by default lines 1 through 1000
+	 */
+	protected OutputWindow needOutputWindow() {
+		long start = needLongOption("start", 1);
+		long limit = needLongOption("limit", 1000);
+		if (start < 1 || limit < 1) {
+			throw new SodacanException(commandName + " --start and --limit must be greater than zero");
+		}
+		return new OutputWindow(start, limit);
+	}
+
+	/**
+	 * Setup the heap allowance for reducing a topic from the <code>--spill</code> option.
+	 * @return A SpillBudget, by default 32 megabytes
+	 */
+	protected SpillBudget needSpillBudget() {
+		return new SpillBudget(needSpillBytes());
+	}
+
+	private long needSpillBytes() {
+		long megabytes = needLongOption("spill", 32);
+		if (megabytes < 0) {
+			throw new SodacanException(commandName + " --spill must not be negative");
+		}
+		return megabytes * 1024 * 1024;
+	}
+
+	/**
+	 * @return true if the <code>--sort</code> option was specified
+	 */
+	protected boolean isSort() {
+		return commandLine.hasOption("sort");
+	}
+
+	/**
+	 * Setup printing of a listing, honoring <code>--start</code>, <code>--limit</code> and <code>--sort</code>.
+	 * A sorted listing larger than <code>--spill</code> is sorted on disk.
+	 * @return A LinePrinter, which should be closed when done
+	 */
+	protected LinePrinter needLinePrinter() {
+		OutputWindow window = needOutputWindow();
+		OutputPipeline<String> output = needOutputPipeline((line, sb) -> sb.append(line), OutputPipeline.Overflow.BLOCK);
+		if (isSort()) {
+			return new LinePrinter(window, needSorter(), output);
+		}
+		return new LinePrinter(window, null, output);
+	}
+
+	/**
+	 * Setup a bounded output stage to the output of this request from the <code>--buffer</code> and <code>--overflow</code> options.
+	 * @param formatter Formats one item as a line
+	 * @param defaultOverflow Overflow policy when there is no <code>--overflow</code> option
+	 * @return An OutputPipeline, which should be closed when done
+	 */
+	protected <T> OutputPipeline<T> needOutputPipeline( OutputPipeline.LineFormatter<T> formatter, OutputPipeline.Overflow defaultOverflow ) {
+		return needOutputPipeline(formatter, defaultOverflow, RequestContext.current().getOut());
+	}
+
+	/**
+	 * Setup a bounded output stage, as above, to the given stream
+	 * @param formatter Formats one item as a line
+	 * @param defaultOverflow Overflow policy when there is no <code>--overflow</code> option
+	 * @param out Where the lines go
+	 * @return An OutputPipeline, which should be closed when done
+	 */
+	protected <T> OutputPipeline<T> needOutputPipeline( OutputPipeline.LineFormatter<T> formatter, OutputPipeline.Overflow defaultOverflow, PrintStream out ) {
+		long buffer = needLongOption("buffer", 10000);
+		if (buffer < 1 || buffer > Integer.MAX_VALUE) {
+			throw new SodacanException(commandName + " --buffer must be between 1 and " + Integer.MAX_VALUE);
+		}
+		OutputPipeline.Overflow overflow = defaultOverflow;
+		if (commandLine.hasOption("overflow")) {
+			overflow = OutputPipeline.Overflow.parse(commandLine.getOptionValue("overflow"));
+		}
+		return new OutputPipeline<>(out, formatter, (int)buffer, overflow, getShortTaskExecutor());
+	}
+
+	/**
+	 * Setup a sorter that keeps up to <code>--spill</code> megabytes on the heap
+	 * @return An ExternalSorter, which should be closed when done
+	 */
+	protected ExternalSorter needSorter() {
+		long bytes = needSpillBytes();
+		if (bytes==0) {
+			throw new SodacanException(commandName + " --spill must be at least 1 to sort");
+		}
+		return new ExternalSorter(bytes);
+	}
+
 	protected String needFileContents( Path path ) {
 		try {
 			return  Files.readString(path);
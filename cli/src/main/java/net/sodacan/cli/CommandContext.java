@@ -16,4 +16,17 @@ package net.sodacan.cli;
 
 public interface CommandContext {
 //	public void stop( String name );
+
+	/**
+	 * Run one complete command line in the already configured session, as the daemon does for each client request.
+	 * @param args Options and command
+	 * @return true if the command succeeded
+	 */
+	public boolean execute( String[] args );
+
+	/**
+	 * Make sure the configuration is read and the session mode is configured and set for the calling thread.
+	 * This is deferred until a command first needs it.
+	 */
+	public void ensureMode();
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A prefix trie over the names of a list of commands, compiled once, so that an abbreviated command
+ * is resolved in time proportional to the length of the abbreviation.</p>
+ * <p>Each node counts the commands whose names start with the prefix leading to it, which is the same set that
+ * <code>Command.isMatch</code> accepts. One command means a match, more than one means the abbreviation is ambiguous.</p>
+ * @author John Churin
+ *
+ */
+public class CommandTrie {
+	/**
+	 * Result of a lookup that matched more than one command
+	 */
+	public static final Command AMBIGUOUS = new ActionCommand("", null, "");
+
+	private static class Node {
+		char[] keys = new char[0];
+		Node[] children = new Node[0];
+		int count = 0;
+		// The only command below this node, if count is one
+		Command command;
+
+		Node child( char c ) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i]==c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild( char c ) {
+			Node node = child(c);
+			if (node==null) {
+				node = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = c;
+				children[children.length - 1] = node;
+			}
+			return node;
+		}
+
+		void add( Command c ) {
+			count++;
+			command = (count==1) ? c : null;
+		}
+	}
+
+	private Node root = new Node();
+
+	public CommandTrie( List<Command> commands ) {
+		for (Command command : commands) {
+			Node node = root;
+			node.add(command);
+			String name = command.getName();
+			for (int i = 0; i < name.length(); i++) {
+				node = node.addChild(name.charAt(i));
+				node.add(command);
+			}
+		}
+	}
+
+	/**
+	 * Find the command matching a full or abbreviated name
+	 * @param token What the user typed
+	 * @return The command, AMBIGUOUS if more than one command matches, or null if none do
+	 */
+	public Command resolve( String token ) {
+		Node node = root;
+		for (int i = 0; i < token.length() && node!=null; i++) {
+			node = node.child(token.charAt(i));
+		}
+		if (node==null || node.count==0) {
+			return null;
+		}
+		if (node.count > 1) {
+			return AMBIGUOUS;
+		}
+		return node.command;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.util.function.Supplier;
+
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * An Action that creates the real action when it is executed, so that command classes,
+ * and everything they refer to, are only loaded for the commands that are actually used.
+ * <p>Each execution gets its own instance. A command keeps the arguments of the call in its fields,
+ * so one instance shared by lines of a script running at the same time would mix up their arguments.
+ * Creating a command is cheap, the class is only loaded once.</p>
+ * @author John Churin
+ *
+ */
+public class LazyAction implements Action {
+	private Supplier<Action> factory;
+
+	public LazyAction( Supplier<Action> factory ) {
+		this.factory = factory;
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		factory.get().execute(commandLine, index);
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.io.Closeable;
+
+import net.sodacan.cli.output.OutputPipeline;
+import net.sodacan.cli.sort.ExternalSorter;
+
+/**
+ * <p>Print lines of a listing through the output window. Without a sorter, lines are printed as soon
+ * as they are offered. With a sorter, lines are collected and printed, in key order, by <code>finish</code>.
+ * Lines are written through an output pipeline, so the thread reading the topic does not wait on the terminal
+ * for every line.</p>
+ * @author John Churin
+ *
+ */
+public class LinePrinter implements Closeable {
+	private OutputWindow window;
+	private ExternalSorter sorter;
+	private OutputPipeline<String> output;
+
+	/**
+	 * @param window Which lines to print
+	 * @param sorter The sorter, or null if the output is not sorted
+	 * @param output Where the lines go
+	 */
+	public LinePrinter( OutputWindow window, ExternalSorter sorter, OutputPipeline<String> output ) {
+		this.window = window;
+		this.sorter = sorter;
+		this.output = output;
+	}
+
+	/**
+	 * Offer one line of output
+	 * @param key The key the line is sorted by
+	 * @param line The line to print
+	 * @return false when no more lines are needed
+	 */
+	public boolean print( String key, String line ) {
+		if (sorter!=null) {
+			sorter.add(key, line);
+			return true;
+		}
+		return printLine(line);
+	}
+
+	private boolean printLine( String line ) {
+		if (window.next()) {
+			output.accept(line);
+		}
+		return !window.isComplete();
+	}
+
+	/**
+	 * Print any lines held back for sorting and wait for all lines to be written
+	 */
+	public void finish() {
+		if (sorter!=null) {
+			sorter.sorted(this::printLine);
+		}
+		output.flush();
+	}
+
+	@Override
+	public void close() {
+		output.close();
+		if (sorter!=null) {
+			sorter.close();
+		}
+	}
+}
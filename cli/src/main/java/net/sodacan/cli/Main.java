@@ -18,6 +18,10 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -32,36 +36,60 @@ import net.sodacan.SodacanException;
 import net.sodacan.api.topic.Initialize;
 import net.sodacan.cli.cmd.AgentListCmd;
 import net.sodacan.cli.cmd.AgentStatusCmd;
+import net.sodacan.cli.cmd.BenchE2eCmd;
+import net.sodacan.cli.cmd.BenchPublishCmd;
 import net.sodacan.cli.cmd.BrokerListCmd;
 import net.sodacan.cli.cmd.BrokerStatusCmd;
 import net.sodacan.cli.cmd.ClockAdvanceCmd;
+import net.sodacan.cli.cmd.ClockRunCmd;
 import net.sodacan.cli.cmd.ClockSetCmd;
 import net.sodacan.cli.cmd.ClockShowCmd;
+import net.sodacan.cli.cmd.DaemonCmd;
 import net.sodacan.cli.cmd.FollowListCmd;
 import net.sodacan.cli.cmd.FollowStopCmd;
 import net.sodacan.cli.cmd.InitializeCmd;
 import net.sodacan.cli.cmd.ModeCreateCmd;
+import net.sodacan.cli.cmd.ModeDiffCmd;
 import net.sodacan.cli.cmd.ModeListCmd;
+import net.sodacan.cli.cmd.ModeSyncCmd;
 import net.sodacan.cli.cmd.ModuleListCmd;
 import net.sodacan.cli.cmd.ModuleLoadCmd;
 import net.sodacan.cli.cmd.ModuleRunCmd;
+import net.sodacan.cli.cmd.ModuleStatsCmd;
 import net.sodacan.cli.cmd.ModuleSubscribersCmd;
+import net.sodacan.cli.cmd.SimulateCmd;
 import net.sodacan.cli.cmd.TickSeedCmd;
 import net.sodacan.cli.cmd.TickStartCmd;
+import net.sodacan.cli.cmd.TopCmd;
 import net.sodacan.cli.cmd.TopicDeleteCmd;
+import net.sodacan.cli.cmd.TopicExportCmd;
 import net.sodacan.cli.cmd.TopicFollowCmd;
+import net.sodacan.cli.cmd.TopicImportCmd;
 import net.sodacan.cli.cmd.TopicListCmd;
 import net.sodacan.cli.cmd.TopicPrintCmd;
 import net.sodacan.cli.cmd.TopicPublishCmd;
 import net.sodacan.cli.cmd.TopicStatusCmd;
 import net.sodacan.cli.cmd.VariableListCmd;
 import net.sodacan.cli.cmd.VariableSetCmd;
+import net.sodacan.cli.metrics.MetricsExporter;
+import net.sodacan.cli.metrics.MetricsRegistry;
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.TraceOutput;
+import net.sodacan.cli.trace.Tracer;
 import net.sodacan.config.Config;
 import net.sodacan.mode.Mode;
 
 public class Main implements CommandContext {
 	private final static Logger logger = LoggerFactory.getLogger(Main.class);
-	private Command command;
+	// Commands that may run concurrently in a pipelined script, ordered by the module they name
+	private static final Set<String> INDEPENDENT_COMMANDS = Set.of("topic publish", "variable set");
+	private SubCommand command;
+	private String modeName = Initialize.DEFAULT_MODE;
+	private String configFile = Initialize.DEFAULT_CONFIG_FILE;
+	private volatile boolean modeConfigured = false;
+	private String metricsFile = null;
+	private MetricsExporter metricsExporter = null;
 	private Options options;
 	private CommandLineParser parser;
 
@@ -72,53 +100,103 @@ public class Main implements CommandContext {
 		logger.trace("Setup Command Dispatch");
 		// Setup command structure
 		command = new SubCommand()
-				.action("agent", "list", new AgentListCmd(this), "List known agents")
-				.action("agent", "status", new AgentStatusCmd(this),"[<pattern>] Show status of matching agents")
-				.action("broker", "list", new BrokerListCmd(this), "List known brokers")
-				.action("broker", "status", new BrokerStatusCmd(this), "Show status of broker(s)")
-				.action("clock", "advance", new ClockAdvanceCmd(this), "Advance Clock by <n> <units>")
-				.action("clock", "set", new ClockSetCmd(this), "Set Time - YYYY [MM [DD [HH [MM [SS]]]]]")
-				.action("clock", "show", new ClockShowCmd(this), "Show Time")
-				.action("initialize", new InitializeCmd(this), "Initialize topics")
-				.action("follow", "list", new FollowListCmd(this), "List current follows")
-				.action("follow", "stop", new FollowStopCmd(this), "Stop the named thread")
-				.action("mode", "list", new ModeListCmd(this), "List known modes")
-				.action("mode", "create", new ModeCreateCmd(this),"<baseMode> <newMode> Create a new mode")
-				.action("module", "list", new ModuleListCmd(this),"list of module names")
-				.action("module", "load", new ModuleLoadCmd(this),"<file> Load a module from file")
-				.action("module", "run", new ModuleRunCmd(this),"<module> Run a module")
-				.action("module", "subscribers", new ModuleSubscribersCmd(this),"<module> A list of a modules subscribers")
-				.action("tick", "start", new TickStartCmd(this), "Start the tick source")
-				.action("tick", "seed", new TickSeedCmd(this), "Seed the tick source")
-				.action("topic", "list", new TopicListCmd(this), "List known topics")
-				.action("topic", "delete", new TopicDeleteCmd(this), "<topic> Delete a topic")
-				.action("topic", "follow", new TopicFollowCmd(this), "<topic> follow contents of a topic")
-				.action("topic", "print", new TopicPrintCmd(this), "<topic> print contents of a topic")
-				.action("topic", "publish", new TopicPublishCmd(this), "<module> <variable> <value> publish the value, module does not have to exist")
-				.action("topic", "status", new TopicStatusCmd(this), "status of topic <topic> ")
-				.action("variable", "list", new VariableListCmd(this), "list variables from a module <module> ")
-				.action("variable", "set", new VariableSetCmd(this), "Set variable <module> <variable> <value> ")
+				.action("agent", "list", lazy(() -> new AgentListCmd(this)), "List known agents")
+				.action("agent", "status", lazy(() -> new AgentStatusCmd(this)),"[<pattern>] Show status of matching agents")
+				.action("bench", "e2e", lazy(() -> new BenchE2eCmd(this)), "<module> <reactionTopic> <publishingModule> <variable> Measure module reaction latency")
+				.action("bench", "publish", lazy(() -> new BenchPublishCmd(this)), "[<module>] Load the message bus, see --producers --keys --size --rate --duration --topic --json")
+				.action("broker", "list", lazy(() -> new BrokerListCmd(this)), "List known brokers")
+				.action("broker", "status", lazy(() -> new BrokerStatusCmd(this)), "Show status of broker(s)")
+				.action("clock", "advance", lazy(() -> new ClockAdvanceCmd(this)), "Advance Clock by <n> <units>")
+				.action("clock", "run", lazy(() -> new ClockRunCmd(this)), "--until <time> Step the clock and send ticks until <time>, see --speed --step --batch")
+				.action("clock", "set", lazy(() -> new ClockSetCmd(this)), "Set Time - YYYY [MM [DD [HH [MM [SS]]]]]")
+				.action("clock", "show", lazy(() -> new ClockShowCmd(this)), "Show Time")
+				.action("initialize", lazy(() -> new InitializeCmd(this)), "Initialize topics")
+				.action("daemon", lazy(() -> new DaemonCmd(this)), "Serve commands from soda-client on a local socket, see --socket")
+				.action("follow", "list", lazy(() -> new FollowListCmd(this)), "List current follows")
+				.action("follow", "stop", lazy(() -> new FollowStopCmd(this)), "Stop the named thread")
+				.action("mode", "diff", lazy(() -> new ModeDiffCmd(this)),"<a> <b> List keys whose state differs between two modes, see --sort --limit")
+				.action("mode", "list", lazy(() -> new ModeListCmd(this)), "List known modes")
+				.action("mode", "create", lazy(() -> new ModeCreateCmd(this)),"<baseMode> <newMode> Create a new mode as a copy of the base mode, see --threads --inflight")
+				.action("mode", "sync", lazy(() -> new ModeSyncCmd(this)),"<a> <b> Make the state of mode b match mode a, writing only what differs")
+				.action("module", "list", lazy(() -> new ModuleListCmd(this)),"list of module names")
+				.action("module", "load", lazy(() -> new ModuleLoadCmd(this)),"<file> Load a module from file")
+				.action("module", "run", lazy(() -> new ModuleRunCmd(this)),"<module> | --all Run a module, or all modules, see --threads")
+				.action("module", "stats", lazy(() -> new ModuleStatsCmd(this)),"Show event rates of the modules run in this session")
+				.action("module", "subscribers", lazy(() -> new ModuleSubscribersCmd(this)),"<module> A list of a modules subscribers")
+				.action("simulate", lazy(() -> new SimulateCmd(this)), "<scenario> Play a scenario of timed events against its modules in virtual time. A module is taken to be done "
+						+ "with an event after 20 ms without activity, so traces can differ between runs, and play is limited to about 50 events a second")
+				.action("tick", "start", lazy(() -> new TickStartCmd(this)), "Start the tick source")
+				.action("tick", "seed", lazy(() -> new TickSeedCmd(this)), "Seed the tick source")
+				.action("top", lazy(() -> new TopCmd(this)), "Show activity of follows and modules, refreshing until Enter, see --duration")
+				.action("topic", "list", lazy(() -> new TopicListCmd(this)), "List known topics")
+				.action("topic", "delete", lazy(() -> new TopicDeleteCmd(this)), "<topic> Delete a topic")
+				.action("topic", "export", lazy(() -> new TopicExportCmd(this)), "<topic> <file> Export a topic to a segment file, see --all --compress")
+				.action("topic", "follow", lazy(() -> new TopicFollowCmd(this)), "<topic> follow contents of a topic from the beginning")
+				.action("topic", "import", lazy(() -> new TopicImportCmd(this)), "<file> <topic> Load a segment file into a topic, see --threads")
+				.action("topic", "print", lazy(() -> new TopicPrintCmd(this)), "<topic> print contents of a topic")
+				.action("topic", "publish", lazy(() -> new TopicPublishCmd(this)), "<module> <variable> <value> | --file <file> publish the value(s), module does not have to exist")
+				.action("topic", "status", lazy(() -> new TopicStatusCmd(this)), "status of topic <topic> ")
+				.action("variable", "list", lazy(() -> new VariableListCmd(this)), "list variables from a module <module> ")
+				.action("variable", "set", lazy(() -> new VariableSetCmd(this)), "Set variable <module> <variable> <value> | <module> <var>=<value>... | --file <file> [--per-module]")
 				.action("help",  null, "Show help in interactive mode")
 				.action("exit",  null, "quit")
 				.action("quit",  null, "quit")
 				;
+		StartupProfile.mark("command setup");
 
 		// create Options object
 		logger.trace("Setup Options");
 		options = new Options();
 		// add t option
 		options.addOption(null, "all", false, "When listing any topic, don't reduce the results");
+		options.addOption(null, "batch", true, "With clock run, ticks to send before waiting for modules to catch up, default 60");
+		options.addOption(null, "buffer", true, "Lines of output that may wait for a slow terminal, default 10000");
+		options.addOption(null, "cache-ttl", true, "Reuse a module's restored variables for up to <seconds>, 0 to always restore, default 60 for variable set and 0 for reads");
+		options.addOption(null, "compress", false, "With topic export, deflate the segment file");
 		options.addOption("c", "config", true, "Config file, default config/config.yaml");
+		options.addOption(null, "count", true, "Number of events to send, default 1000");
 		options.addOption("d", "debug", false, "show debug output");
+		options.addOption(null, "duration", true, "Run for <seconds>, default 10");
+		options.addOption(null, "executor", true, "Run follows and modules on auto, virtual (Java 21+), platform (no thread limit) or platform:<threads>, default auto");
 		options.addOption("h", "help", false, "This help");
+		options.addOption(null, "file", true, "Read rows of module,variable,value from <file>, - for stdin, for topic publish and variable set");
 		options.addOption("I", "indirect", true, "Execute the contents of the named file. Add -i to be interactive after that.");
 		options.addOption("i", "interactive", false, "Interactive mode");
+		options.addOption(null, "inflight", true, "Maximum number of messages in flight, default 64 for topic publish, 1024 for topic import, mode create and mode sync");
+		options.addOption(null, "json", true, "Also write results as JSON to <file>");
+		options.addOption(null, "keys", true, "Number of distinct keys, default 100");
 		options.addOption(null, "limit", true, "Limit output to <lines>, detault 1000");
+		options.addOption(null, "metrics-file", true, "Write metrics to <file> when done, Prometheus text format or JSON if it ends in .json");
+		options.addOption(null, "metrics-port", true, "With -i or daemon, serve metrics on http://localhost:<port>/metrics");
 		options.addOption("m", true, "Specify sticky mode, default mode is default");
+		options.addOption(null, "overflow", true, "When the output buffer is full: block, drop (the oldest) or sample, default block for print, drop for follow");
+		options.addOption(null, "parallel", true, "With -I, run up to <n> independent publish and variable set commands at once");
+		options.addOption(null, "per-module", false, "With variable set --file, apply all rows of a module in one cycle wherever they are in the file");
+		options.addOption(null, "producers", true, "Number of concurrent producers, default 4");
+		options.addOption(null, "rate", true, "Limit to <n> messages per second in total, default unlimited");
+		options.addOption(null, "size", true, "Value size in characters, default 16");
+		options.addOption(null, "socket", true, "Daemon socket <path>, default $SODA_SOCKET, $XDG_RUNTIME_DIR/soda.sock or soda-<user>/soda.sock in the temp directory");
 		options.addOption(null, "sort", false, "Sort the output of a list or print");
+		options.addOption(null, "spill", true, "Reduce or sort on the heap up to <megabytes>, then spill to disk, default 32");
+		options.addOption(null, "speed", true, "With clock run, times faster than real time, or max, default max");
 		options.addOption(null, "start", true, "Start output at <line>, detault 1");
+		options.addOption(null, "step", true, "With clock run, seconds between ticks, default 60");
+		options.addOption(null, "threads", true, "Number of worker threads for topic publish, topic import, mode create and mode sync, default 4");
+		options.addOption(null, "topic", true, "Produce directly to <topic> rather than through a module");
+		options.addOption(null, "trace", false, "Print a timing tree of the phases of each command on stderr");
+		options.addOption(null, "trace-file", true, "Append the spans of each command to <file> as OTLP JSON, one line per command");
+		options.addOption(null, "until", true, "With clock run, stop at <time>, such as 2023-03-01T00:00:00Z");
 		options.addOption("q", "quiet", false, "Don't be verbose");
+		options.addOption(null, "startup-profile", false, "Show how long each phase of startup took");
 		parser = new DefaultParser(true);
+		StartupProfile.mark("option setup");
+	}
+
+	/**
+	 * Commands are only created when first used
+	 */
+	private Action lazy( Supplier<Action> factory ) {
+		return new LazyAction(factory);
 	}
 
 	public void interactiveMode() {
@@ -161,9 +239,25 @@ public class Main implements CommandContext {
 	}
 	
 	public void openAndExecute( String fileName ) {
+		openAndExecute(fileName, 1);
+	}
+
+	/**
+	 * <p>Execute the commands in a file. With more than one thread, commands that publish or set variables
+	 * are run concurrently, with commands naming the same module kept in file order. Any other command,
+	 * such as a clock or mode change, is a barrier: it waits for everything before it to complete and runs
+	 * on its own.</p>
+	 * @param fileName The file of commands
+	 * @param threads The number of commands that may run at the same time
+	 */
+	public void openAndExecute( String fileName, int threads ) {
 		BufferedReader bufferedReader = null;
+		KeyedPipeline pipeline = null;
 		try {
-			bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
+			if (threads > 1) {
+				pipeline = new KeyedPipeline("script", threads, threads * 16, 16);
+			}
+			bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(RequestContext.current().resolvePath(fileName).toFile())));
 			while (true) {
 				String response = bufferedReader.readLine();
 				if (response==null) break;
@@ -174,12 +268,19 @@ public class Main implements CommandContext {
 				}
 				if (!response.isEmpty()) {
 					String args[] = response.split(" ");
-					parse(args,false);
+					if (pipeline==null) {
+						parse(args,false);
+					} else {
+						pipeline(pipeline, args);
+					}
 				}
 			}
 		} catch (IOException e) {
 			throw new SodacanException("Error opening inddirect file: " + fileName);
 		} finally {
+			if (pipeline!=null) {
+				pipeline.close();
+			}
 			if (bufferedReader!=null) {
 				try {
 					bufferedReader.close();
@@ -190,13 +291,91 @@ public class Main implements CommandContext {
 
 	}
 
+	/**
+	 * Run one line of a pipelined script, either concurrently or as a barrier
+	 * @param pipeline
+	 * @param args
+	 */
+	protected void pipeline( KeyedPipeline pipeline, String[] args ) {
+		CommandLine cmd;
+		try {
+			cmd = parser.parse(options, args);
+		} catch (Exception e) {
+			reportError(e);
+			return;
+		}
+		String key = orderingKey(cmd);
+		if (key==null) {
+			pipeline.drain();
+			dispatch(cmd);
+		} else {
+			// The line runs for the same request, wherever the pipeline runs it
+			RequestContext context = RequestContext.current();
+			pipeline.submit(key, () -> context.run(() -> dispatch(cmd)));
+		}
+	}
+
+	/**
+	 * Decide if a command can run alongside others
+	 * @param cmd The parsed command
+	 * @return The module name that orders this command, or null if the command is a barrier
+	 */
+	protected String orderingKey( CommandLine cmd ) {
+		String[] args = cmd.getArgs();
+		if (args.length < 3 || cmd.hasOption("file")) {
+			return null;
+		}
+		try {
+			Command top = command.resolve(args[0]);
+			if (top instanceof SubCommand) {
+				Command sub = ((SubCommand)top).resolve(args[1]);
+				if (INDEPENDENT_COMMANDS.contains(top.getName() + " " + sub.getName())) {
+					return args[2];
+				}
+			}
+		} catch (SodacanException e) {
+			// Not a valid command, let the normal dispatch report it
+		}
+		return null;
+	}
+
 	/**
 	 * Before we get started, set the mode we're going to use for this session. This must follow
 	 * the configFile setup.
 	 * @param modeName
 	 */
 	public void setupMode( String modeName) {
+		this.modeName = modeName;
 		Mode.configure(Config.getInstance());
+		modeConfigured = true;
+		Mode.setModeInThread(modeName);
+	}
+
+	/**
+	 * Read the configuration and configure the modes, which loads the plugins, the first time a command
+	 * actually needs a mode. Commands such as help or follow list never pay for it. The session mode is then
+	 * set for the calling thread.
+	 */
+	@Override
+	public void ensureMode() {
+		if (!modeConfigured) {
+			synchronized (this) {
+				if (!modeConfigured) {
+					StartupProfile.mark("dispatch");
+					if (!Config.isInitialized()) {
+						try (Span span = Tracer.span("Config.init").attribute("file", configFile)) {
+							setupConfig(configFile);
+						}
+					}
+					StartupProfile.mark("config");
+					try (Span span = Tracer.span("Mode.configure")) {
+						Mode.configure(Config.getInstance());
+					}
+					StartupProfile.mark("mode configure");
+					modeConfigured = true;
+				}
+			}
+		}
 		Mode.setModeInThread(modeName);
 	}
 
@@ -213,23 +392,29 @@ public class Main implements CommandContext {
 				      command.printHelp("");
 				      return;
 				}
-				// Config file setup
+				// Config file and mode are only remembered here, see ensureMode
 				if (cmd.hasOption('c')) {
-					setupConfig(cmd.getOptionValue("c"));
-				} else {
-					setupConfig( "config/config.yaml");
+					configFile = cmd.getOptionValue("c");
 				}
 				if (cmd.hasOption('m')) {
-					setupMode(cmd.getOptionValue("m"));
-				} else {
-					setupMode(Initialize.DEFAULT_MODE);
+					modeName = cmd.getOptionValue("m");
+				}
+				if (cmd.hasOption("metrics-file")) {
+					metricsFile = cmd.getOptionValue("metrics-file");
 				}
+				if (cmd.hasOption("metrics-port")) {
+					getMetricsExporter().serve(metricsPort(cmd.getOptionValue("metrics-port")));
+				}
+				if (cmd.hasOption("executor")) {
+					CmdBase.setExecutorStrategy(cmd.getOptionValue("executor"));
+				}
+				StartupProfile.mark("option parse");
 				// We go recursive here: open a file and process it.
 				// But be careful of cycles.
 				if (cmd.hasOption('I')) {
 					String fileName = cmd.getOptionValue('I');
 					logger.debug("Command file: " + fileName);
-					openAndExecute( fileName );
+					openAndExecute( fileName, (int)parallel(cmd) );
 				}
 				if (cmd.hasOption('i')) {
 					interactiveMode();
@@ -237,20 +422,141 @@ public class Main implements CommandContext {
 				}
 			}
 			// The rest depend on command(s)
+			dispatch(cmd);
+		} catch (Exception e) {
+			reportError(e);
+		}
+	}
+
+	private int metricsPort( String value ) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new SodacanException("Invalid port for --metrics-port: " + value);
+		}
+	}
+
+	/**
+	 * Write the metrics file, if one was asked for
+	 */
+	public void exportMetrics() {
+		if (metricsFile!=null) {
+			getMetricsExporter().writeFile(Paths.get(metricsFile));
+		}
+	}
+
+	private synchronized MetricsExporter getMetricsExporter() {
+		if (metricsExporter==null) {
+			metricsExporter = new MetricsExporter(MetricsRegistry.getInstance());
+		}
+		return metricsExporter;
+	}
+
+	private long parallel( CommandLine cmd ) {
+		if (!cmd.hasOption("parallel")) {
+			return 1;
+		}
+		try {
+			return Long.parseLong(cmd.getOptionValue("parallel"));
+		} catch (NumberFormatException e) {
+			throw new SodacanException("Invalid number for --parallel: " + cmd.getOptionValue("parallel"));
+		}
+	}
+
+	/**
+	 * Dispatch an already parsed command
+	 * @param cmd
+	 * @return true if the command completed without error
+	 */
+	protected boolean dispatch( CommandLine cmd ) {
+		Span trace = null;
+		if (cmd.hasOption("trace") || cmd.hasOption("trace-file")) {
+			trace = Tracer.start(String.join(" ", cmd.getArgs()));
+		}
+		try {
 			logger.trace("Dispatch");
 			command.dispatch(cmd,0);
+			return true;
 		} catch (Exception e) {
-			if (e instanceof SodacanException && e.getCause()==null) {
-				System.err.println(e.getMessage());
-			} else {
-				System.err.println(e.toString());
-				Throwable t = e.getCause();
-				while (t!=null) {
-					System.out.println("  caused by: " + t.getLocalizedMessage());
-					t = t.getCause();
+			if (trace!=null) {
+				trace.attribute("error", e.toString());
+			}
+			reportError(e);
+			return false;
+		} finally {
+			if (trace!=null) {
+				finishTrace(cmd, trace);
+			}
+		}
+	}
+
+	/**
+	 * Show the trace of a command as a tree on stderr and, or, append it to the trace file
+	 */
+	private void finishTrace( CommandLine cmd, Span trace ) {
+		trace.close();
+		if (cmd.hasOption("trace")) {
+			TraceOutput.printTree(trace, System.err);
+		}
+		if (cmd.hasOption("trace-file")) {
+			try {
+				TraceOutput.appendOtlp(trace, RequestContext.current().resolvePath(cmd.getOptionValue("trace-file")));
+			} catch (SodacanException e) {
+				reportError(e);
+			}
+		}
+	}
+
+	/**
+	 * Run a command line on behalf of a daemon client. Configuration and mode are already set up,
+	 * but <code>-m</code> may select a different mode for this one command.
+	 */
+	@Override
+	public boolean execute( String[] args ) {
+		String sessionMode = modeName;
+		try {
+			CommandLine cmd = parser.parse(options, args);
+			if (args.length==0 || cmd.hasOption('h')) {
+				showHelp();
+				return true;
+			}
+			if (cmd.hasOption('i')) {
+				System.err.println("Interactive mode is not available through the daemon");
+				return false;
+			}
+			if (cmd.hasOption('m')) {
+				modeName = cmd.getOptionValue('m');
+			}
+			if (cmd.hasOption('I')) {
+				openAndExecute( cmd.getOptionValue('I'), (int)parallel(cmd) );
+				if (cmd.getArgs().length==0) {
+					return true;
 				}
-				
 			}
+			return dispatch(cmd);
+		} catch (Exception e) {
+			reportError(e);
+			return false;
+		} finally {
+			modeName = sessionMode;
+			if (modeConfigured) {
+				Mode.setModeInThread(sessionMode);
+			}
+			exportMetrics();
+		}
+	}
+
+	protected void reportError( Exception e ) {
+		if (e instanceof SodacanException && e.getCause()==null) {
+			System.err.println(e.getMessage());
+		} else {
+			System.err.println(e.toString());
+			Throwable t = e.getCause();
+			while (t!=null) {
+				System.out.println("  caused by: " + t.getLocalizedMessage());
+				t = t.getCause();
+			}
+			
 		}
 	}
 	
@@ -263,14 +569,25 @@ public class Main implements CommandContext {
 	}
 
 	public static void main(String[] args) throws ParseException {
+		// Checked before the parser exists so that building the parser is also measured
+		if (args!=null && Arrays.asList(args).contains("--startup-profile")) {
+			StartupProfile.enable();
+		}
 		Main main = new Main();
 		if (args==null || args.length==0) {
 			main.showHelp();
 		} else {
 			main.parse(args, true);
 		}
+		StartupProfile.mark("command");
 		// Kill threads before we go
 		CmdBase.deleteAllFutures();
+		try {
+			main.exportMetrics();
+		} catch (SodacanException e) {
+			main.reportError(e);
+		}
+		StartupProfile.print();
 	}
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+/**
+ * Track which output lines fall within the <code>--start</code> and <code>--limit</code> options.
+ * Lines are numbered from one.
+ * @author John Churin
+ *
+ */
+public class OutputWindow {
+	private long start;
+	private long limit;
+	private long line = 0;
+
+	public OutputWindow( long start, long limit) {
+		this.start = start;
+		this.limit = limit;
+	}
+
+	/**
+	 * Count one more line of output
+	 * @return true if this line is inside the window and should be printed
+	 */
+	public boolean next() {
+		line++;
+		return (line >= start && line < start + limit);
+	}
+
+	/**
+	 * @return true when no further lines can fall within the window
+	 */
+	public boolean isComplete() {
+		return (line >= start + limit - 1);
+	}
+
+	public long getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Where a command line came from: the directory relative file names are resolved against, whether it can
+ * read stdin or wait for a key, and where its output goes. A command typed at the terminal, or run from a script,
+ * uses the process's own. A daemon request carries the client's directory and output streams and has no stdin.</p>
+ * <p>The context belongs to the thread running the command. Work a command hands to another thread on its behalf
+ * is run with {@link #run(Runnable)}. Background work, such as a follow or a module runtime, has no request and
+ * keeps to the process's own output.</p>
+ * @author John Churin
+ *
+ */
+public class RequestContext {
+	private static final RequestContext LOCAL = new RequestContext(null, true, true, null, null);
+	private static final ThreadLocal<RequestContext> current = new ThreadLocal<>();
+
+	private Path workingDirectory;
+	private boolean stdin;
+	private boolean interactive;
+	private PrintStream out;
+	private PrintStream err;
+
+	/**
+	 * @param workingDirectory Relative names are resolved against this, null for the process's own
+	 * @param stdin true if the command may read stdin
+	 * @param interactive true if the command may wait for a key and draw on a terminal
+	 * @param out Output of the command, null for System.out
+	 * @param err Errors of the command, null for System.err
+	 */
+	public RequestContext( Path workingDirectory, boolean stdin, boolean interactive, PrintStream out, PrintStream err ) {
+		this.workingDirectory = workingDirectory;
+		this.stdin = stdin;
+		this.interactive = interactive;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * @return The context of the calling thread, the process's own if it is not running a request
+	 */
+	public static RequestContext current() {
+		RequestContext context = current.get();
+		return (context==null) ? LOCAL : context;
+	}
+
+	/**
+	 * @return The context of the calling thread, or null if it is not running a request
+	 */
+	static RequestContext active() {
+		return current.get();
+	}
+
+	/**
+	 * Run something in this context on the calling thread
+	 * @param task
+	 */
+	public void run( Runnable task ) {
+		RequestContext previous = current.get();
+		current.set(this);
+		try {
+			task.run();
+		} finally {
+			if (previous==null) {
+				current.remove();
+			} else {
+				current.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * @param fileName A file name from the command line
+	 * @return The file, relative names resolved against the working directory of the request
+	 */
+	public Path resolvePath( String fileName ) {
+		Path path = Paths.get(fileName);
+		if (workingDirectory==null || path.isAbsolute()) {
+			return path;
+		}
+		return workingDirectory.resolve(path);
+	}
+
+	/**
+	 * @param fileName A file to read, or "-" for stdin
+	 * @return The name to open
+	 */
+	public String resolveInput( String fileName ) {
+		if ("-".equals(fileName)) {
+			if (!stdin) {
+				throw new SodacanException("stdin is not available to a daemon request, name a file instead");
+			}
+			return fileName;
+		}
+		return resolvePath(fileName).toString();
+	}
+
+	/**
+	 * @return true if the command may wait for keys from, and draw on, the user's terminal
+	 */
+	public boolean isInteractive() {
+		return interactive && System.console()!=null;
+	}
+
+	/**
+	 * @return The stream given for this request, null if it uses the process's own
+	 */
+	PrintStream getStream( boolean error ) {
+		return error ? err : out;
+	}
+
+	public PrintStream getOut() {
+		return (out==null) ? System.out : out;
+	}
+
+	public PrintStream getErr() {
+		return (err==null) ? System.err : err;
+	}
+}
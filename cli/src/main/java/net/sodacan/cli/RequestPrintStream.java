@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * <p>Installed as System.out and System.err by the daemon. Whatever a thread running a request prints goes to
+ * that request's client, anything else, such as a follow or a module runtime, goes to the daemon's own stream.</p>
+ * @author John Churin
+ *
+ */
+public class RequestPrintStream extends PrintStream {
+	private PrintStream fallback;
+	private boolean error;
+
+	/**
+	 * @param fallback The daemon's own stream
+	 * @param error true to route to the request's errors rather than its output
+	 */
+	public RequestPrintStream( PrintStream fallback, boolean error ) {
+		super(OutputStream.nullOutputStream(), true);
+		this.fallback = fallback;
+		this.error = error;
+	}
+
+	/**
+	 * @param stream Usually System.out or System.err
+	 * @return The stream as seen by background work, the daemon's own if the stream routes requests
+	 */
+	public static PrintStream unrouted( PrintStream stream ) {
+		if (stream instanceof RequestPrintStream) {
+			return ((RequestPrintStream)stream).fallback;
+		}
+		return stream;
+	}
+
+	private PrintStream target() {
+		RequestContext context = RequestContext.active();
+		PrintStream stream = (context==null) ? null : context.getStream(error);
+		return (stream==null) ? fallback : stream;
+	}
+
+	@Override
+	public void write( int b ) {
+		target().write(b);
+	}
+
+	@Override
+	public void write( byte[] buf, int off, int len ) {
+		target().write(buf, off, len);
+	}
+
+	@Override
+	public void flush() {
+		target().flush();
+	}
+
+	@Override
+	public boolean checkError() {
+		return target().checkError();
+	}
+
+	@Override
+	public void close() {
+		// The underlying streams belong to someone else
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Per-phase timings for <code>--startup-profile</code>. Each call to <code>mark</code> names the phase that
+ * just ended. When the profile is not enabled, marks cost next to nothing.</p>
+ * @author John Churin
+ *
+ */
+public class StartupProfile {
+	private static volatile boolean enabled = false;
+	private static long mainMillis;
+	private static long startNanos;
+	private static long lastNanos;
+	private static List<String> phases = new ArrayList<>();
+	private static List<Long> durations = new ArrayList<>();
+
+	/**
+	 * Start profiling, called as early in main as possible
+	 */
+	public static void enable() {
+		mainMillis = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		lastNanos = startNanos;
+		enabled = true;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Record the end of a phase
+	 * @param phase What was being done since the previous mark
+	 */
+	public static synchronized void mark( String phase ) {
+		if (!enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		phases.add(phase);
+		durations.add(now - lastNanos);
+		lastNanos = now;
+	}
+
+	/**
+	 * Print the phases to stderr. The JVM start time is only looked up here because the management
+	 * classes are themselves slow to load.
+	 */
+	public static synchronized void print() {
+		if (!enabled) {
+			return;
+		}
+		long jvmMillis = mainMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+		System.err.println("Startup profile (ms):");
+		System.err.printf("  %-28s %9d\n", "jvm start to main", jvmMillis);
+		for (int p = 0; p < phases.size(); p++) {
+			System.err.printf("  %-28s %9.3f\n", phases.get(p), durations.get(p) / 1_000_000.0);
+		}
+		System.err.printf("  %-28s %9.3f\n", "total since main", (lastNanos - startNanos) / 1_000_000.0);
+	}
+}
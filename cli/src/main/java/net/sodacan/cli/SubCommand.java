@@ -15,15 +15,31 @@
 package net.sodacan.cli;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.cli.CommandLine;
 
 import net.sodacan.SodacanException;
+import net.sodacan.cli.metrics.CliMetrics;
 
+/**
+ * <p>A command made up of named sub-commands. Sub-command names may be abbreviated as long as the abbreviation
+ * is unambiguous.</p>
+ * <p>The names are compiled into a CommandTrie on first dispatch and each token, as typed, is cached
+ * with the command it resolved to, so scripts that repeat the same commands skip resolution altogether.
+ * Adding an action discards both.</p>
+ */
 public class SubCommand extends Command {
+	// Upper limit on the number of distinct tokens remembered
+	private static final int CACHE_LIMIT = 1024;
 	
 	List<Command> commands = new ArrayList<>();
+	private Map<String, Command> byName = new HashMap<>();
+	private volatile CommandTrie trie = null;
+	private Map<String, Command> resolved = new ConcurrentHashMap<>();
 	
 	public SubCommand( String name) {
 		super(name);
@@ -33,46 +49,89 @@ public class SubCommand extends Command {
 		super("");
 	}
 
+	private void add( Command command ) {
+		commands.add(command);
+		byName.putIfAbsent(command.getName(), command);
+		trie = null;
+		resolved.clear();
+	}
 
 	public SubCommand action( String name, Action action, String help) {
-		commands.add(new ActionCommand(name, action, help));
+		add(new ActionCommand(name, action, help));
 		return this;
 	}
 
 	public SubCommand action( String top, String name, Action action, String help) {
-		for (Command command : commands) {
-			if (top.equals(command.getName())) {
-				if (command instanceof SubCommand) {
-					SubCommand sc = (SubCommand)command;
-					sc.action(name, action, help);
-				}
-				return this;
+		Command command = byName.get(top);
+		if (command!=null) {
+			if (command instanceof SubCommand) {
+				SubCommand sc = (SubCommand)command;
+				sc.action(name, action, help);
 			}
+			return this;
 		}
-		commands.add(new SubCommand( top).action(name, action, help));
+		add(new SubCommand( top).action(name, action, help));
 		return this;
 	}
 
+	/**
+	 * Find the sub-command for a full or abbreviated name. A name typed in full wins over longer
+	 * names it is also an abbreviation of, as top does over topic.
+	 * @param cmdString The name as typed
+	 * @return The matching command
+	 */
+	public Command resolve( String cmdString ) {
+		Command command = resolved.get(cmdString);
+		if (command!=null) {
+			return command;
+		}
+		command = byName.get(cmdString);
+		if (command!=null) {
+			return command;
+		}
+		CommandTrie t = trie;
+		if (t==null) {
+			t = new CommandTrie(commands);
+			trie = t;
+		}
+		command = t.resolve(cmdString);
+		if (command==CommandTrie.AMBIGUOUS) {
+			throw new SodacanException("Ambiguous command, add more letters to the command");
+		}
+		if (command==null) {
+			throw new SodacanException("Not a valid command '" + cmdString + "'");
+		}
+		if (resolved.size() < CACHE_LIMIT) {
+			resolved.put(cmdString, command);
+		}
+		return command;
+	}
+
 	@Override
 	public void dispatch( CommandLine commandLine, int index ) {
 		if (commandLine.getArgs().length<1) {
 			System.out.println("No command");
 			return;
 		}
+		if (index >= commandLine.getArgs().length) {
+			throw new SodacanException("Incomplete command, add one of the '" + getName() + "' commands");
+		}
 		String cmdString = commandLine.getArgs()[index];
-		Command command = null;
-		for (Command sc: commands) {
-			if (sc.isMatch(cmdString)) {
-				if (command!=null) {
-					throw new SodacanException("Ambiguous command, add more letters to the command");
-				}
-				command = sc;
-			}
+		Command command = resolve(cmdString);
+		if (!(command instanceof ActionCommand)) {
+			command.dispatch(commandLine, index+1);
+			return;
 		}
-		if (command==null) {
-			throw new SodacanException("Not a valid command '" + cmdString + "'");
+		// Count and time each command under its full name
+		String fullName = getName().isEmpty() ? command.getName() : getName() + " " + command.getName();
+		long start = System.nanoTime();
+		boolean ok = false;
+		try {
+			command.dispatch(commandLine, index+1);
+			ok = true;
+		} finally {
+			CliMetrics.command(fullName, System.nanoTime() - start, ok);
 		}
-		command.dispatch(commandLine, index+1);
 	}
 
 	@Override
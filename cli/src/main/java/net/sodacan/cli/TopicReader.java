@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.messagebus.MBTopic;
+
+/**
+ * <p>Read a topic incrementally, from a starting offset up to the end of the topic. Each record is handed
+ * to the visitor as it arrives so nothing accumulates on the heap unless the visitor decides to keep it.
+ * This is the streaming alternative to <code>MBTopic.snapshot()</code>.</p>
+ * <p>The underlying follow is cancelled once the EOF marker arrives or the visitor returns false.</p>
+ * @author John Churin
+ *
+ */
+public class TopicReader {
+	// How often we check that the follow is still alive while waiting for the end of the topic
+	private static final long POLL_MS = 100;
+	private MB mb;
+	private String topicName;
+
+	public TopicReader( MB mb, String topicName) {
+		this.mb = mb;
+		this.topicName = topicName;
+	}
+
+	public String getTopicName() {
+		return topicName;
+	}
+
+	/**
+	 * Read the topic from the specified offset. The visitor is called on the follow thread, one record at a time.
+	 * @param offset The offset of the first record to read, zero for the whole topic
+	 * @param visitor Returns true to keep reading, false to stop
+	 * @return The number of records accepted by the visitor
+	 */
+	public long read( long offset, Predicate<MBRecord> visitor ) {
+		try (Span span = Tracer.span("TopicReader.read").attribute("topic", topicName)) {
+			long count = readTopic(offset, visitor);
+			span.attribute("records", Long.toString(count));
+			return count;
+		}
+	}
+
+	private long readTopic( long offset, Predicate<MBRecord> visitor ) {
+		MBTopic mbt = mb.openTopic(topicName, offset);
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicBoolean stopped = new AtomicBoolean(false);
+		AtomicLong count = new AtomicLong();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		Future<?> future = mbt.follow((rec) -> {
+			if (stopped.get()) {
+				return;
+			}
+			try {
+				if (rec.isEOF() || !visitor.test(rec)) {
+					stopped.set(true);
+					done.countDown();
+				} else {
+					CliMetrics.read(rec);
+					count.incrementAndGet();
+				}
+			} catch (RuntimeException e) {
+				failure.set(e);
+				stopped.set(true);
+				done.countDown();
+			}
+		});
+		try {
+			while (!done.await(POLL_MS, TimeUnit.MILLISECONDS)) {
+				if (future.isDone()) {
+					checkFuture(future);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("Interrupted while reading topic " + topicName, e);
+		} finally {
+			future.cancel(true);
+		}
+		if (failure.get()!=null) {
+			throw failure.get();
+		}
+		return count.get();
+	}
+
+	/**
+	 * The follow ended without reaching EOF, surface the reason if there is one.
+	 * @param future
+	 */
+	private void checkFuture( Future<?> future ) {
+		try {
+			future.get();
+		} catch (CancellationException e) {
+			// Someone else stopped it, we're done either way
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new SodacanException("Error reading topic " + topicName, e.getCause());
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.stats.LatencyHistogram;
+
+/**
+ * The outcome of a benchmark run. It can be printed or written as JSON so that runs against different
+ * broker configurations can be compared.
+ * @author John Churin
+ *
+ */
+public class BenchResult {
+	private static final double[] PERCENTILES = new double[] {50, 75, 90, 95, 99, 99.9, 99.99};
+	private String benchmark;
+	private String mode;
+	private String started;
+	private Map<String, Object> parameters = new LinkedHashMap<>();
+	private long count;
+	private long errors;
+	private double seconds;
+	private double throughput;
+	private Map<String, Double> latencyMs = new LinkedHashMap<>();
+
+	public BenchResult( String benchmark, String mode ) {
+		this.benchmark = benchmark;
+		this.mode = mode;
+		this.started = Instant.now().toString();
+	}
+
+	public BenchResult parameter( String name, Object value ) {
+		parameters.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Fill in the results from a completed run
+	 * @param latency Latencies of the successful operations
+	 * @param errors Number of failed operations
+	 * @param elapsedNanos Duration of the run
+	 */
+	public void complete( LatencyHistogram latency, long errors, long elapsedNanos ) {
+		this.count = latency.getCount();
+		this.errors = errors;
+		this.seconds = elapsedNanos / 1_000_000_000.0;
+		this.throughput = count / Math.max(seconds, 1e-9);
+		for (double p : PERCENTILES) {
+			latencyMs.put("p" + p, latency.getValueAtPercentile(p) / 1_000_000.0);
+		}
+		latencyMs.put("max", latency.getMax() / 1_000_000.0);
+		latencyMs.put("mean", latency.getMean() / 1_000_000.0);
+	}
+
+	public void print( PrintStream out ) {
+		out.printf("%s (mode %s) %s\n", benchmark, mode, parameters);
+		out.printf("  %d operations, %d errors in %.3f s, %.1f ops/sec\n", count, errors, seconds, throughput);
+		out.println("  Latency (ms):");
+		latencyMs.forEach((k,v) -> out.printf("    %-8s %10.3f\n", k, v));
+	}
+
+	/**
+	 * Write the result as JSON
+	 * @param fileName
+	 */
+	public void writeJson( String fileName ) {
+		try {
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(fileName), this);
+		} catch (IOException e) {
+			throw new SodacanException("Error writing benchmark result to " + fileName, e);
+		}
+	}
+
+	public String getBenchmark() {
+		return benchmark;
+	}
+
+	public String getMode() {
+		return mode;
+	}
+
+	public String getStarted() {
+		return started;
+	}
+
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public double getSeconds() {
+		return seconds;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public Map<String, Double> getLatencyMs() {
+		return latencyMs;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cache;
+
+import net.sodacan.api.module.ModuleContext;
+import net.sodacan.api.module.VariableContext;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>A module fetched and its variables restored, ready to be read or changed. Contexts are not
+ * thread safe, so users synchronize on the CachedModule while they use it.</p>
+ * @author John Churin
+ *
+ */
+public class CachedModule {
+	private String moduleName;
+	private ModuleContext moduleContext;
+	private VariableContext variableContext;
+	private long loadedNanos;
+	private volatile boolean valid = true;
+
+	/**
+	 * Fetch the module and replay its state
+	 */
+	protected CachedModule( Mode mode, String moduleName ) {
+		this.moduleName = moduleName;
+		moduleContext = new ModuleContext(mode);
+		try (Span span = Tracer.span("ModuleContext.fetchModule").attribute("module", moduleName)) {
+			moduleContext.fetchModule(moduleName);
+		}
+		variableContext = moduleContext.getVariableContext();
+		try (Span span = Tracer.span("VariableContext.restoreAll")) {
+			variableContext.restoreAll();
+		}
+		loadedNanos = System.nanoTime();
+	}
+
+	public String getModuleName() {
+		return moduleName;
+	}
+
+	public ModuleContext getModuleContext() {
+		return moduleContext;
+	}
+
+	public VariableContext getVariableContext() {
+		return variableContext;
+	}
+
+	/**
+	 * @return How long ago the state was replayed, in nanoseconds
+	 */
+	public long getAgeNanos() {
+		return System.nanoTime() - loadedNanos;
+	}
+
+	/**
+	 * Mark this module as not to be used again, for example after a failed save left it in an unknown state
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sodacan.cli.host.ModuleHost;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>Modules with their variables restored, kept for the rest of a session so that a script setting a
+ * thousand variables in one module replays the module's state once rather than a thousand times. Changes
+ * made through a cached module, such as variable set, keep it up to date. Changes made elsewhere, by a
+ * running module or another user, are picked up when the entry is older than the time to live. For that
+ * reason commands that only show state, such as variable list, don't use the cache unless asked to.</p>
+ * <p>Entries are dropped when a module is loaded in the mode and when a module is run by this session, as
+ * either can change a module's definition or state behind our back. While this session runs a module it
+ * is not cached at all, its state moves on with every event, so each get restores it afresh. The least
+ * recently used entries go once there are more than {@link #MAX_ENTRIES}.</p>
+ * @author John Churin
+ *
+ */
+public class ModuleCache {
+	public static final int MAX_ENTRIES = 256;
+	private static final ModuleCache instance = new ModuleCache();
+
+	private Map<String, CachedModule> entries = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedModule> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private long hits = 0;
+	private long misses = 0;
+
+	public static ModuleCache getInstance() {
+		return instance;
+	}
+
+	private static String key( String modeName, String moduleName ) {
+		return modeName + "/" + moduleName;
+	}
+
+	/**
+	 * Get a module, from the cache if it is young enough
+	 * @param mode
+	 * @param moduleName
+	 * @param ttlNanos How old a cached module may be, zero not to use the cache at all
+	 * @return The module, fetched and restored
+	 */
+	public CachedModule get( Mode mode, String moduleName, long ttlNanos ) {
+		if (ttlNanos <= 0 || isHosted(mode, moduleName)) {
+			return new CachedModule(mode, moduleName);
+		}
+		String key = key(mode.getModeName(), moduleName);
+		synchronized (this) {
+			CachedModule cached = entries.get(key);
+			if (cached!=null && cached.isValid() && cached.getAgeNanos() < ttlNanos) {
+				hits++;
+				Tracer.span("ModuleCache.hit").attribute("module", moduleName).close();
+				return cached;
+			}
+			misses++;
+		}
+		// Load outside the lock, a slow replay of one module shouldn't hold up the others
+		CachedModule loaded = new CachedModule(mode, moduleName);
+		synchronized (this) {
+			entries.put(key, loaded);
+		}
+		return loaded;
+	}
+
+	private static boolean isHosted( Mode mode, String moduleName ) {
+		ModuleHost host = ModuleHost.get(mode);
+		return host!=null && host.isRunning(moduleName);
+	}
+
+	/**
+	 * Forget a module
+	 */
+	public synchronized void invalidate( String modeName, String moduleName ) {
+		CachedModule cached = entries.remove(key(modeName, moduleName));
+		if (cached!=null) {
+			cached.invalidate();
+		}
+	}
+
+	/**
+	 * Forget every module of a mode
+	 */
+	public synchronized void invalidateMode( String modeName ) {
+		String prefix = modeName + "/";
+		Iterator<Map.Entry<String, CachedModule>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, CachedModule> entry = it.next();
+			if (entry.getKey().startsWith(prefix)) {
+				entry.getValue().invalidate();
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.api.module.SimplePublisher;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.RequestContext;
+import net.sodacan.cli.bench.BenchResult;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.stats.LatencyHistogram;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBTopic;
+import net.sodacan.mode.Mode;
+import net.sodacan.runtime.Runtime;
+/**
+ * <p>Measure how long a module takes to react to an event. The module is started in this process, as with
+ * <code>module run</code>, and its publish topic is followed. Then, one at a time, a uniquely valued event is published
+ * to a variable the module subscribes to and the time until a record carrying that value appears on the reaction topic
+ * is recorded. Other records on the reaction topic, including late reactions to earlier events, are skipped, so the
+ * module must pass the value it received on into its reaction.</p>
+ * <pre>bench e2e &lt;module&gt; &lt;reactionTopic&gt; &lt;publishingModule&gt; &lt;variable&gt; [--count &lt;n&gt;] [--json &lt;file&gt;]</pre>
+ * <p>For example, <code>bench e2e test31 &lt;test31's topic&gt; test30 aa</code>. This works with any message bus, including
+ * the memory plugin in the <code>test</code> mode.</p>
+ * @author John Churin
+ *
+ */
+public class BenchE2eCmd extends CmdBase implements Action {
+	private static final long TIMEOUT_MS = 5000;
+	private static final int WARMUP = 10;
+
+	/**
+	 * A record on the reaction topic and when it arrived
+	 */
+	private static class Reaction {
+		long nanos;
+		String value;
+		Reaction( long nanos, String value ) {
+			this.nanos = nanos;
+			this.value = value;
+		}
+	}
+
+	public BenchE2eCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		Mode mode = needMode();
+		String moduleName = needArg(0, "Module name");
+		String reactionTopic = needArg(1, "Reaction topic");
+		String publishModule = needArg(2, "Publishing module");
+		String variableName = needArg(3, "Variable");
+		long count = needLongOption("count", 1000);
+		MB mb = mode.getMB();
+		// Reactions are time-stamped as they arrive, anything already in the topic is skipped
+		BlockingQueue<Reaction> reactions = new LinkedBlockingQueue<>();
+		CountDownLatch caughtUp = new CountDownLatch(1);
+		MBTopic mbt = mb.openTopic(reactionTopic, 0);
+		Future<?> follow = mbt.follow((rec) -> {
+			if (rec.isEOF()) {
+				caughtUp.countDown();
+			} else if (caughtUp.getCount()==0) {
+				reactions.add(new Reaction(System.nanoTime(), rec.getValue()));
+			}
+		});
+		Future<?> runtime = getExecutorService().submit(new Runtime(mode, moduleName));
+		SimplePublisher sp = new SimplePublisher(mode);
+		LatencyHistogram latency = new LatencyHistogram();
+		long timeouts = 0;
+		long start = 0;
+		try {
+			if (!caughtUp.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				throw new SodacanException("Timed out reading reaction topic " + reactionTopic);
+			}
+			// The runtime has to catch up on its own topics before it reacts
+			int warmed = 0;
+			for (int w = 0; warmed < WARMUP && w < WARMUP * 10; w++) {
+				if (probe(sp, publishModule, variableName, "warmup-" + w, reactions) >= 0) {
+					warmed++;
+				}
+			}
+			if (warmed==0) {
+				throw new SodacanException("Module " + moduleName + " did not react on " + reactionTopic);
+			}
+			start = System.nanoTime();
+			for (long i = 0; i < count; i++) {
+				long elapsed = probe(sp, publishModule, variableName, "e2e-" + i, reactions);
+				if (elapsed < 0) {
+					timeouts++;
+				} else {
+					latency.record(elapsed);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("bench e2e interrupted", e);
+		} finally {
+			follow.cancel(true);
+			runtime.cancel(true);
+		}
+		BenchResult result = new BenchResult("e2e", mode.getModeName())
+				.parameter("module", moduleName)
+				.parameter("reactionTopic", reactionTopic)
+				.parameter("event", publishModule + "." + variableName)
+				.parameter("count", count);
+		result.complete(latency, timeouts, System.nanoTime() - start);
+		result.print(System.out);
+		if (commandLine.hasOption("json")) {
+			result.writeJson(RequestContext.current().resolvePath(commandLine.getOptionValue("json")).toString());
+		}
+	}
+
+	/**
+	 * Publish one event and wait for the reaction that carries its value
+	 * @return Nanoseconds from publish to reaction, or -1 on timeout
+	 * @throws InterruptedException
+	 */
+	private long probe( SimplePublisher sp, String publishModule, String variableName, String value, BlockingQueue<Reaction> reactions) throws InterruptedException {
+		long sent = System.nanoTime();
+		String token = value + "-" + sent;
+		sp.publish(publishModule, variableName, token);
+		CliMetrics.published("SimplePublisher", 1);
+		long deadline = sent + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+		while (true) {
+			Reaction reaction = reactions.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (reaction==null) {
+				return -1;
+			}
+			// Anything else is a late reaction to an earlier event, or not a reaction to ours
+			if (reaction.value!=null && reaction.value.contains(token)) {
+				return reaction.nanos - sent;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.api.module.SimplePublisher;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.RequestContext;
+import net.sodacan.cli.bench.BenchResult;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.stats.LatencyHistogram;
+import net.sodacan.messagebus.MB;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Measure what the mode's message bus can sustain. <code>--producers</code> threads publish for
+ * <code>--duration</code> seconds, spreading messages over <code>--keys</code> variables with values of
+ * <code>--size</code> characters. With <code>--rate</code>, the total rate is capped and latency is measured from when
+ * each message was due to be sent, so a stalled bus shows up as latency rather than as a lower send rate.</p>
+ * <p>By default messages go through SimplePublisher to the named module (default "bench"). With <code>--topic</code> they
+ * are produced straight to that topic with <code>MB.produce</code>.
+ * <code>--json &lt;file&gt;</code> saves the result for comparison with other runs.</p>
+ * @author John Churin
+ *
+ */
+public class BenchPublishCmd extends CmdBase implements Action {
+	// Number of distinct values each producer cycles through
+	private static final int VALUE_POOL = 64;
+
+	public BenchPublishCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		Mode mode = needMode();
+		String moduleName = (argCount() > 0) ? needArg(0, "Module") : "bench";
+		String topicName = commandLine.getOptionValue("topic");
+		int producers = (int)needLongOption("producers", 4);
+		int keys = (int)needLongOption("keys", 100);
+		int size = (int)needLongOption("size", 16);
+		long rate = needLongOption("rate", 0);
+		long duration = needLongOption("duration", 10);
+		if (producers < 1 || keys < 1 || size < 0 || rate < 0 || duration < 1) {
+			throw new SodacanException("bench publish: invalid producers, keys, size, rate or duration");
+		}
+		BenchResult result = new BenchResult("publish", mode.getModeName())
+				.parameter("target", (topicName==null) ? "SimplePublisher:" + moduleName : "MB:" + topicName)
+				.parameter("producers", producers)
+				.parameter("keys", keys)
+				.parameter("size", size)
+				.parameter("rate", rate)
+				.parameter("duration", duration);
+		MB mb = mode.getMB();
+		LatencyHistogram latency = new LatencyHistogram();
+		LongAdder errors = new LongAdder();
+		// Each producer gets an equal share of the rate
+		long intervalNanos = (rate==0) ? 0 : producers * 1_000_000_000L / rate;
+		ExecutorService producerPool = Executors.newFixedThreadPool(producers);
+		long start = System.nanoTime();
+		long deadline = start + duration * 1_000_000_000L;
+		List<Future<?>> running = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			running.add(producerPool.submit(() -> {
+				SimplePublisher sp = (topicName==null) ? new SimplePublisher(mode) : null;
+				String[] values = values(size);
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long next = System.nanoTime();
+				int sent = 0;
+				while (true) {
+					long intended;
+					if (intervalNanos > 0) {
+						long now;
+						while ((now = System.nanoTime()) < next) {
+							LockSupport.parkNanos(next - now);
+						}
+						intended = next;
+						next += intervalNanos;
+					} else {
+						intended = System.nanoTime();
+					}
+					if (intended >= deadline || Thread.currentThread().isInterrupted()) {
+						break;
+					}
+					String key = "v" + random.nextInt(keys);
+					String value = values[sent++ % VALUE_POOL];
+					try {
+						if (sp!=null) {
+							sp.publish(moduleName, key, value);
+						} else {
+							mb.produce(topicName, key, value);
+						}
+						latency.record(System.nanoTime() - intended);
+					} catch (RuntimeException e) {
+						errors.increment();
+					}
+				}
+			}));
+		}
+		try {
+			for (Future<?> future : running) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("bench publish interrupted", e);
+		} catch (ExecutionException e) {
+			throw new SodacanException("bench publish failed", e.getCause());
+		} finally {
+			producerPool.shutdownNow();
+		}
+		CliMetrics.published((topicName==null) ? "SimplePublisher" : "MB", latency.getCount());
+		result.complete(latency, errors.sum(), System.nanoTime() - start);
+		result.print(System.out);
+		if (commandLine.hasOption("json")) {
+			result.writeJson(RequestContext.current().resolvePath(commandLine.getOptionValue("json")).toString());
+		}
+	}
+
+	private static String[] values( int size ) {
+		String[] values = new String[VALUE_POOL];
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int v = 0; v < VALUE_POOL; v++) {
+			StringBuilder sb = new StringBuilder(size);
+			for (int c = 0; c < size; c++) {
+				sb.append((char)('a' + random.nextInt(26)));
+			}
+			values[v] = sb.toString();
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.host.ModuleHost;
+import net.sodacan.cli.sim.Scenario;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.mode.Mode;
+import net.sodacan.mode.spi.ClockProvider;
+import net.sodacan.mode.spi.TickSourceProvider;
+
+/**
+ * <p>Fast forward a mode with a static clock. The clock is stepped by <code>--step</code> seconds, default 60 which is
+ * the tick increment in the sample config, and a tick is sent for each step until the clock reaches <code>--until</code>.
+ * Ticks go out in batches of <code>--batch</code>. After each batch we wait for the modules run in this session to
+ * catch up, so a module sees time pass much as it would in real life, just faster.</p>
+ * <p><code>--speed</code> is how many times faster than real time to run, or <code>max</code>, the default,
+ * to not wait beyond the modules catching up.</p>
+ * @author John Churin
+ *
+ */
+public class ClockRunCmd extends CmdBase implements Action {
+	private static final long SETTLE_MILLIS = 20;
+	private static final long QUIET_TIMEOUT_MILLIS = 30_000;
+
+	public ClockRunCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		if (!commandLine.hasOption("until")) {
+			throw new SodacanException("clock run needs --until <time>");
+		}
+		Instant until = Scenario.parseTime(commandLine.getOptionValue("until"));
+		double speed = parseSpeed(commandLine.getOptionValue("speed", "max"));
+		long stepSeconds = needLongOption("step", 60);
+		long batch = needLongOption("batch", 60);
+		if (stepSeconds < 1 || batch < 1) {
+			throw new SodacanException("clock run: --step and --batch must be at least 1");
+		}
+		Duration step = Duration.ofSeconds(stepSeconds);
+		Mode mode = needMode();
+		ClockProvider cp = mode.getClockProvider();
+		TickSourceProvider tsp = mode.getTickSourceProvider();
+		Instant now = Instant.ofEpochSecond(cp.getTimestamp());
+		if (!until.isAfter(now)) {
+			throw new SodacanException("clock run: the clock is already at " + now);
+		}
+		long steps = Duration.between(now, until).getSeconds() / stepSeconds;
+		ModuleHost host = ModuleHost.get(mode);
+		long ticks = 0;
+		long timeouts = 0;
+		long start = System.nanoTime();
+		try (Span span = Tracer.span("clock.run").attribute("ticks", Long.toString(steps))) {
+			while (ticks < steps) {
+				long count = Math.min(batch, steps - ticks);
+				for (long x = 0; x < count; x++) {
+					cp.advanceClock(step);
+					now = now.plus(step);
+					tsp.sendTick(now);
+				}
+				ticks += count;
+				if (host!=null && !host.awaitQuiet(SETTLE_MILLIS, QUIET_TIMEOUT_MILLIS)) {
+					timeouts++;
+				}
+				if (speed > 0) {
+					// Where real time should be after this much simulated time
+					long due = start + (long)(ticks * stepSeconds * 1_000_000_000.0 / speed);
+					long wait = due - System.nanoTime();
+					if (wait > 0) {
+						Thread.sleep(wait / 1_000_000, (int)(wait % 1_000_000));
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("clock run interrupted at " + now);
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		System.out.printf("Sent %d ticks up to %s in %.2f s (%.0f ticks/s)\n", ticks, now, seconds, seconds > 0 ? ticks / seconds : 0.0);
+		if (host==null) {
+			System.out.println("No modules are running in this session, ticks were not waited on");
+		} else if (timeouts > 0) {
+			System.out.println("Modules did not catch up within " + QUIET_TIMEOUT_MILLIS / 1000 + " s after " + timeouts + " batches");
+		}
+	}
+
+	/**
+	 * @return Speed factor, zero for as fast as possible
+	 */
+	private double parseSpeed( String speed ) {
+		if ("max".equals(speed)) {
+			return 0;
+		}
+		try {
+			double factor = Double.parseDouble(speed);
+			if (factor > 0) {
+				return factor;
+			}
+		} catch (NumberFormatException e) {
+		}
+		throw new SodacanException("clock run: --speed must be a positive factor or max, not " + speed);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.daemon.DaemonServer;
+import net.sodacan.cli.daemon.DaemonSocket;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Keep this CLI running and serve commands sent by <code>soda-client</code> over a local socket,
+ * so that each command skips JVM startup, configuration and plugin setup. The daemon runs until
+ * <code>soda-client --stop</code>.</p>
+ * @author John Churin
+ *
+ */
+public class DaemonCmd extends CmdBase implements Action {
+
+	public DaemonCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		// Bring the mode, and its plugins, up before the first request
+		Mode mode = needMode();
+		mode.getMB();
+		Path path = commandLine.hasOption("socket") ? Paths.get(commandLine.getOptionValue("socket")) : DaemonSocket.defaultPath();
+		new DaemonServer(cc, path).run();
+	}
+
+}
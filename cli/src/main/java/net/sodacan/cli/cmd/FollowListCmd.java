@@ -14,11 +14,14 @@
  */
 package net.sodacan.cli.cmd;
 
+import java.util.concurrent.Future;
+
 import org.apache.commons.cli.CommandLine;
 
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.follow.Subscription;
 
 public class FollowListCmd extends CmdBase implements Action {
 
@@ -29,7 +32,13 @@ public class FollowListCmd extends CmdBase implements Action {
 	@Override
 	public void execute(CommandLine commandLine, int index) {
 		for (String futureName : getFutures()) {
-			System.out.println("Following: " + futureName);
+			Future<?> future = getFuture(futureName);
+			if (future instanceof Subscription) {
+				Subscription subscription = (Subscription)future;
+				System.out.println("Following: " + futureName + " topic " + subscription.getTopicName() + ", " + subscription.getDelivered() + " records, " + subscription.getDropped() + " dropped");
+			} else {
+				System.out.println("Following: " + futureName);
+			}
 		}
 	}
 
@@ -14,13 +14,37 @@
  */
 package net.sodacan.cli.cmd;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 import org.apache.commons.cli.CommandLine;
 
+import net.sodacan.SodacanException;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
-
+import net.sodacan.cli.modes.ModeTopics;
+import net.sodacan.cli.modes.TopicCopier;
+import net.sodacan.messagebus.MB;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Create a mode as a copy of another. Both modes must be in the configuration, the new one must not be
+ * registered yet. Every topic of the base mode, including <code>modules</code> and the state and publish topics of
+ * each module, is copied into the new mode, with topics named for the base mode renamed. When both modes use the
+ * same message bus, a topic not named for the base mode would be the same topic in both, so the new mode would
+ * write into the base mode's live topics. That is refused, give the new mode its own message bus instead. Whether
+ * the buses are the same is tested on the buses themselves, see {@link ModeTopics#isSameBus(MB, MB)}. Copying into a
+ * topic that already has records in the new mode's bus is refused as well.</p>
+ * <p>Topics are streamed, <code>--threads</code> at a time, with at most <code>--inflight</code> records between
+ * reading and writing, so a mode of any size is copied in one pass. Progress is shown every second unless <code>-q</code>.</p>
+ * @author John Churin
+ *
+ */
 public class ModeCreateCmd extends CmdBase implements Action {
+	private static final long PROGRESS_MILLIS = 1000;
 
 	public ModeCreateCmd( CommandContext cc) {
 		super( cc );
@@ -28,8 +52,75 @@ public class ModeCreateCmd extends CmdBase implements Action {
 	
 	@Override
 	public void execute(CommandLine commandLine, int index) {
-		// TODO Auto-generated method stub
+		init( commandLine, index);
+		String baseName = needArg(0, "base mode");
+		String newName = needArg(1, "new mode");
+		if (baseName.equals(newName)) {
+			throw new SodacanException("mode create: the new mode must have a different name");
+		}
+		int threads = (int)needLongOption("threads", 4);
+		int inflight = (int)needLongOption("inflight", 1024);
+		boolean quiet = commandLine.hasOption("quiet");
+		Mode current = needMode();
+		Mode base = ModeTopics.forName(baseName, current);
+		Mode target = ModeTopics.forName(newName, current);
+		MB from = base.getMB();
+		MB to = target.getMB();
+		boolean sameBus = ModeTopics.isSameBus(from, to);
+		if (ModeTopics.getRegistration(from, newName)!=null || (!sameBus && ModeTopics.getRegistration(to, newName)!=null)) {
+			throw new SodacanException("mode create: mode " + newName + " already exists");
+		}
+		Set<String> existing = new HashSet<>(to.listTopics());
+		Map<String, String> topics = new TreeMap<>();
+		Set<String> shared = new TreeSet<>();
+		Set<String> occupied = new TreeSet<>();
+		for (String topicName : from.listTopics()) {
+			String targetName = ModeTopics.rename(topicName, baseName, newName);
+			if (sameBus && targetName.equals(topicName)) {
+				if (!ModeTopics.MODES.equals(topicName)) {
+					shared.add(topicName);
+				}
+				continue;
+			}
+			if (!ModeTopics.MODES.equals(targetName) && existing.contains(targetName) && !ModeTopics.isEmpty(to, targetName)) {
+				occupied.add(targetName);
+			}
+			topics.put(topicName, targetName);
+		}
+		if (!shared.isEmpty()) {
+			throw new SodacanException("mode create: modes " + baseName + " and " + newName + " use the same message bus, so topics "
+					+ shared + " would be shared between them rather than copied. Configure a separate message bus for " + newName);
+		}
+		if (!occupied.isEmpty()) {
+			throw new SodacanException("mode create: topics " + occupied + " already have records in the message bus of " + newName
+					+ ", copying would add to them");
+		}
+		for (Map.Entry<String, String> entry : topics.entrySet()) {
+			String topicName = entry.getKey();
+			String targetName = entry.getValue();
+			if (!existing.contains(targetName)) {
+				to.createTopic(targetName, ModeTopics.isCompacted(from, topicName));
+			}
+		}
+		TopicCopier copier = new TopicCopier(from, to, threads, threads, inflight);
+		long start = System.nanoTime();
+		copier.copy(topics, getExecutorService(), () -> {
+			if (!quiet) {
+				System.out.println(progress(copier, start));
+			}
+		}, PROGRESS_MILLIS);
+		ModeTopics.register(from, newName, baseName);
+		if (!sameBus) {
+			ModeTopics.register(to, newName, baseName);
+		}
+		System.out.println("Created mode " + newName + " from " + baseName + ": " + progress(copier, start));
+	}
 
+	private String progress( TopicCopier copier, long start ) {
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		return String.format("%d of %d topics, %d records, %.1f MB in %.1f s, %.0f records/s",
+				copier.getTopicsDone(), copier.getTopicCount(), copier.getRecords(), copier.getBytes() / 1_048_576.0,
+				seconds, copier.getRecords() / Math.max(seconds, 1e-9));
 	}
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.LinePrinter;
+import net.sodacan.cli.modes.ModeDiff;
+import net.sodacan.cli.modes.ModeTopics;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Show how the reduced state of mode <code>b</code> differs from mode <code>a</code>, topic by topic, as the
+ * changes <code>mode sync a b</code> would make to <code>b</code>: <code>+</code> for a key <code>b</code> lacks,
+ * <code>-</code> for a key only <code>b</code> has and <code>~</code> for a key with a different value. The listing honors
+ * <code>--start</code>, <code>--limit</code> and <code>--sort</code>, while the summary counts every difference, so all
+ * topics are compared in full. See {@link ModeDiff} for how topics are compared.</p>
+ * @author John Churin
+ *
+ */
+public class ModeDiffCmd extends CmdBase implements Action {
+
+	public ModeDiffCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		String fromName = needArg(0, "mode a");
+		String toName = needArg(1, "mode b");
+		Mode current = needMode();
+		Mode from = ModeTopics.forName(fromName, current);
+		Mode to = ModeTopics.forName(toName, current);
+		ModeDiff modeDiff = new ModeDiff(from.getMB(), fromName, to.getMB(), toName, this::needSpillBudget, this::needSorter);
+		long[] changes = new long[] {0};
+		int topicsChanged = 0;
+		Map<String, String> topics = modeDiff.pairTopics();
+		try (LinePrinter printer = needLinePrinter()) {
+			for (Map.Entry<String, String> topic : topics.entrySet()) {
+				long before = changes[0];
+				String toTopic = topic.getValue();
+				// Every change is counted for the summary, the printer decides which are shown
+				modeDiff.diff(topic.getKey(), toTopic, (key, change) -> {
+					changes[0]++;
+					printer.print(toTopic + " " + key, change.getSymbol() + " " + toTopic + " " + key);
+					return true;
+				});
+				if (changes[0] > before) {
+					topicsChanged++;
+				}
+			}
+			printer.finish();
+		}
+		System.out.println(changes[0] + " keys differ in " + topicsChanged + " of " + topics.size() + " topics");
+	}
+
+}
@@ -21,6 +21,10 @@ import org.apache.commons.cli.CommandLine;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.OutputWindow;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.modes.ModeTopics;
+import net.sodacan.cli.sort.ExternalSorter;
 import net.sodacan.messagebus.MB;
 import net.sodacan.messagebus.MBRecord;
 import net.sodacan.messagebus.MBTopic;
@@ -38,9 +42,31 @@ public class ModeListCmd extends CmdBase implements Action {
 		Mode mode = needMode();
 		MB mb = mode.getMB();
 		System.out.print("Modes: [");
-		MBTopic mbt = mb.openTopic("Modes", 0);
+		MBTopic mbt = mb.openTopic(ModeTopics.MODES, 0);
 		Map<String, MBRecord> map = mbt.snapshot();
-		map.forEach((k,v) -> System.out.print(k + "=" + v + ","));
+		map.values().forEach(CliMetrics::snapshot);
+		// --start and --limit count modes, in sorted order with --sort
+		OutputWindow window = needOutputWindow();
+		if (isSort()) {
+			try (ExternalSorter sorter = needSorter()) {
+				map.forEach((k,v) -> sorter.add(k, k + "=" + v));
+				sorter.sorted((line) -> {
+					if (window.next()) {
+						System.out.print(line + ",");
+					}
+					return !window.isComplete();
+				});
+			}
+		} else {
+			for (Map.Entry<String, MBRecord> entry : map.entrySet()) {
+				if (window.next()) {
+					System.out.print(entry.getKey() + "=" + entry.getValue() + ",");
+				}
+				if (window.isComplete()) {
+					break;
+				}
+			}
+		}
 		System.out.println("]");
 	}
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.cache.ModuleCache;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.modes.ModeDiff;
+import net.sodacan.cli.modes.ModeTopics;
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Make the reduced state of mode <code>b</code> the same as that of mode <code>a</code>, for example to promote
+ * what was tested in a mode made by <code>mode create</code>. Only the keys <code>mode diff a b</code> lists are written:
+ * added and changed keys get their latest record from <code>a</code>, keys only <code>b</code> has are deleted.
+ * Writes go through <code>--threads</code> workers with at most <code>--inflight</code> outstanding.</p>
+ * @author John Churin
+ *
+ */
+public class ModeSyncCmd extends CmdBase implements Action {
+	// Records a worker takes from its queue at once
+	private static final int BATCH_SIZE = 100;
+
+	public ModeSyncCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		String fromName = needArg(0, "mode a");
+		String toName = needArg(1, "mode b");
+		int threads = (int)needLongOption("threads", 4);
+		int inflight = (int)needLongOption("inflight", 1024);
+		boolean quiet = commandLine.hasOption("quiet");
+		Mode current = needMode();
+		Mode from = ModeTopics.forName(fromName, current);
+		Mode to = ModeTopics.forName(toName, current);
+		ModeDiff modeDiff = new ModeDiff(from.getMB(), fromName, to.getMB(), toName, this::needSpillBudget, this::needSorter);
+		long start = System.nanoTime();
+		long[] counts = new long[ModeDiff.Change.values().length];
+		long written = 0;
+		Map<String, String> topics = modeDiff.pairTopics();
+		try (KeyedPipeline pipeline = new KeyedPipeline("sync", threads, inflight, BATCH_SIZE)) {
+			for (Map.Entry<String, String> topic : topics.entrySet()) {
+				long synced = modeDiff.sync(topic.getKey(), topic.getValue(), pipeline, (key, change) -> {
+					counts[change.ordinal()]++;
+					return true;
+				});
+				if (synced > 0 && !quiet) {
+					System.out.println(topic.getValue() + ": " + synced + " keys");
+				}
+				written += synced;
+			}
+			pipeline.drain();
+			if (pipeline.getErrorCount() > 0) {
+				throw new SodacanException("mode sync: " + pipeline.getErrorCount() + " records could not be written, first error: " + pipeline.getFirstError());
+			}
+		} finally {
+			// Whatever was written, cached module state of the target is stale
+			ModuleCache.getInstance().invalidateMode(toName);
+		}
+		CliMetrics.published("MB", written);
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		System.out.printf("Synced %s from %s in %.3f s: %d added, %d removed, %d changed in %d topics\n", toName, fromName, seconds,
+				counts[ModeDiff.Change.ADDED.ordinal()], counts[ModeDiff.Change.REMOVED.ordinal()], counts[ModeDiff.Change.CHANGED.ordinal()], topics.size());
+	}
+
+}
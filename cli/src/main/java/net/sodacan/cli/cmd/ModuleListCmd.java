@@ -14,17 +14,15 @@
  */
 package net.sodacan.cli.cmd;
 
-import java.util.Map;
-
 import org.apache.commons.cli.CommandLine;
 
 import net.sodacan.api.topic.Initialize;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.LinePrinter;
+import net.sodacan.cli.reduce.TopicReducer;
 import net.sodacan.messagebus.MB;
-import net.sodacan.messagebus.MBRecord;
-import net.sodacan.messagebus.MBTopic;
 import net.sodacan.mode.Mode;
 
 public class ModuleListCmd extends CmdBase implements Action {
@@ -38,9 +36,11 @@ public class ModuleListCmd extends CmdBase implements Action {
 		init(commandLine, index);
 		Mode mode = needMode();
 		MB mb = mode.getMB();
-		MBTopic mbt = mb.openTopic(Initialize.MODULES, 0);
-		Map<String, MBRecord> map = mbt.snapshot();
-		map.forEach((k,v) -> System.out.println(k+ "=" + v));
+		try (LinePrinter printer = needLinePrinter()) {
+			TopicReducer reducer = new TopicReducer(mb, Initialize.MODULES, needSpillBudget());
+			reducer.reduce((rec) -> printer.print(rec.getKey(), rec.getKey() + "=" + rec));
+			printer.finish();
+		}
 	}
 
 }
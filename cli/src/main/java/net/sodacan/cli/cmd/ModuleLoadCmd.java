@@ -22,6 +22,9 @@ import net.sodacan.api.module.ModuleContext;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.cache.ModuleCache;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
 import net.sodacan.mode.Mode;
 /**
  * <p>Load a module into Sodacan.</p>
@@ -47,7 +50,11 @@ public class ModuleLoadCmd extends CmdBase implements Action {
 		Path path = needPath(0);
 		try {
 			String rawSource = needFileContents(path);
-			new ModuleContext(mode).loadRawModule( rawSource );
+			try (Span span = Tracer.span("ModuleContext.loadRawModule").attribute("file", path.toString())) {
+				new ModuleContext(mode).loadRawModule( rawSource );
+			}
+			// The module's name is inside the source, so forget the whole mode
+			ModuleCache.getInstance().invalidateMode(mode.getModeName());
 		} finally {
 		}
 	}
@@ -14,13 +14,19 @@
  */
 package net.sodacan.cli.cmd;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.cli.CommandLine;
 
+import net.sodacan.api.topic.Initialize;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.host.HostedModule;
+import net.sodacan.cli.host.ModuleHost;
+import net.sodacan.cli.reduce.TopicReducer;
 import net.sodacan.mode.Mode;
-import net.sodacan.runtime.Runtime;
 /**
  * <p>Run a module in a Sodacan runtime. The runtime is the same as if run within an agent but
  * it differs in that there is no coordination with other runners of this module. In other words,
@@ -28,6 +34,8 @@ import net.sodacan.runtime.Runtime;
  * environment. But it is useful when testing a new module. </p>
  * <p>A module run in this way continues until the CLI exits or until the <code>follow stop</code> command is used to stop it.
  * While the module is running, you can publish messages and change the clock which the module will respond to.</p>
+ * <p>With <code>--all</code>, every module known to the mode is run in this process, each on a thread of the
+ * session's executor, see <code>--executor</code>. <code>module stats</code> shows how busy each one is.</p>
  * @author John Churin
  *
  */
@@ -40,9 +48,24 @@ public class ModuleRunCmd extends CmdBase implements Action {
 	@Override
 	public void execute(CommandLine commandLine, int index) {
 		init( commandLine, index);
-		String moduleName = needArg(0, "Module name");
 		Mode mode = needMode();
-		addFuture(mode.getModeName() + "-" + moduleName, executorService.submit(new Runtime(mode, moduleName)));			
+		ModuleHost host = ModuleHost.forMode(mode);
+		if (isAll()) {
+			List<String> moduleNames = new ArrayList<>();
+			TopicReducer reducer = new TopicReducer(mode.getMB(), Initialize.MODULES, needSpillBudget());
+			reducer.reduce((rec) -> moduleNames.add(rec.getKey()));
+			for (String moduleName : moduleNames) {
+				start(host, mode, moduleName);
+			}
+			System.out.println("Running " + moduleNames.size() + " modules on " + getExecutorDescription() + " threads");
+		} else {
+			start(host, mode, needArg(0, "Module name"));
+		}
+	}
+
+	private void start( ModuleHost host, Mode mode, String moduleName ) {
+		HostedModule hosted = host.start(moduleName, getExecutorService());
+		addFuture(mode.getModeName() + "-" + moduleName, hosted);
 	}
 
 }
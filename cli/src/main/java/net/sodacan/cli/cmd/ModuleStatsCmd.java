@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.host.HostedModule;
+import net.sodacan.cli.host.ModuleHost;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>Show the modules run by <code>module run</code> in this session: their state, the number of events
+ * seen on the topics they subscribe to, the rate since they started and the rate since the last time this
+ * command was used. Totals follow. Events are counted from when a module was started. The Runtime doesn't expose
+ * its queue, so how far behind a module is can't be shown.</p>
+ * @author John Churin
+ *
+ */
+public class ModuleStatsCmd extends CmdBase implements Action {
+
+	public ModuleStatsCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		Mode mode = needMode();
+		ModuleHost host = ModuleHost.get(mode);
+		if (host==null || host.getModules().isEmpty()) {
+			System.out.println("No modules running in mode " + mode.getModeName());
+			return;
+		}
+		List<HostedModule> modules = host.getModules();
+		long totalEvents = 0;
+		double totalRate = 0;
+		System.out.printf("%-24s %12s %10s %10s  %s\n", "Module", "Events", "Total/s", "Recent/s", "State");
+		for (HostedModule module : modules) {
+			double recent = module.getRecentRate();
+			System.out.printf("%-24s %12d %10.1f %10.1f  %s\n", module.getName(), module.getEvents(), module.getRate(), recent, module.getState());
+			totalEvents += module.getEvents();
+			totalRate += recent;
+		}
+		System.out.printf("%-24s %12d %10s %10.1f\n", modules.size() + " modules", totalEvents, "", totalRate);
+	}
+
+}
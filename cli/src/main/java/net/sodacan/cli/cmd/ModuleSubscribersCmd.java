@@ -16,11 +16,10 @@ package net.sodacan.cli.cmd;
 
 import org.apache.commons.cli.CommandLine;
 
-import net.sodacan.api.module.ModuleContext;
-import net.sodacan.api.module.VariableContext;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.cache.CachedModule;
 import net.sodacan.mode.Mode;
 /**
  * List the variables that this module subscribes to, if any.
@@ -38,14 +37,12 @@ public class ModuleSubscribersCmd extends CmdBase implements Action {
 		init( commandLine, index);
 		String moduleName = needArg(0, "Module name");
 		Mode mode = needMode();
-		// Get the module
-		ModuleContext mctx = new ModuleContext(mode);
-		mctx.fetchModule(moduleName);
-		// Get the variable context
-		VariableContext vctx = mctx.getVariableContext();
-		vctx.restoreAll();
+		// Get the module with its variables
+		CachedModule module = needModuleToRead(mode, moduleName);
 		// Now get the subset of variables that are type subscribe.
-		System.out.println(vctx.getListOfSubscriberTopics());
+		synchronized (module) {
+			System.out.println(module.getVariableContext().getListOfSubscriberTopics());
+		}
 	}
 
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.sim.Scenario;
+import net.sodacan.cli.sim.Simulator;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>Play a scenario file of timed publishes, ticks and clock changes against the modules it names, in
+ * virtual time, and print everything that happens. Use it with a mode that has a static clock and memory
+ * message bus, such as <code>-m test</code>. See {@link Scenario} for the file format, and {@link Simulator} for how
+ * far a trace can be relied on. If the modules failed to go quiet after any event the trace is out of step and the
+ * command fails, after printing the trace and the summary.</p>
+ * @author John Churin
+ *
+ */
+public class SimulateCmd extends CmdBase implements Action {
+
+	public SimulateCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		Scenario scenario = Scenario.load(needPath(0));
+		if (scenario.getEvents().isEmpty()) {
+			throw new SodacanException("The scenario has no events");
+		}
+		Mode mode = needMode();
+		Simulator simulator = new Simulator(mode, scenario, System.out);
+		long start = System.nanoTime();
+		try {
+			simulator.run(getExecutorService());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("simulate interrupted");
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		System.out.printf("Simulated %d events, %d records traced, %d timeouts, in %.3f s\n",
+				simulator.getEventCount(), simulator.getRecordCount(), simulator.getTimeouts(), seconds);
+		if (simulator.getTimeouts() > 0) {
+			throw new SodacanException("Modules did not go quiet in time after " + simulator.getTimeouts() + " events, the trace is out of step");
+		}
+	}
+
+}
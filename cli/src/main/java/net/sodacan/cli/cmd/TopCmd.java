@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.RequestContext;
+import net.sodacan.cli.stats.ActivityStats;
+import net.sodacan.cli.stats.Monitored;
+
+/**
+ * <p>A refreshing table of everything running in the background of this session: follows and modules.
+ * For each it shows records per second since the last refresh, records received but not yet handled,
+ * how far behind the topic it is, how long ago the last record arrived, CPU time of the thread behind it
+ * and callback latency.</p>
+ * <p>The message bus has no way to ask for the end offset of a topic, so lag is measured from this side.
+ * Pending is records the consumer has handed over that the callback, or the terminal, has not dealt with yet.
+ * Behind is the newest offset the topic's consumer has read less the last offset this follow was given, plus
+ * its lines not yet written. All follows of a topic share its consumer thread and show its CPU time.</p>
+ * <p>On an interactive terminal the table refreshes every second until Enter is pressed, or for
+ * <code>--duration</code> seconds. Requests passed through the daemon are never interactive, whatever
+ * console the daemon itself has, so there one table is printed, or tables for <code>--duration</code> seconds.</p>
+ * @author John Churin
+ *
+ */
+public class TopCmd extends CmdBase implements Action {
+	private static final String CLEAR = "\033[H\033[2J";
+
+	public TopCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		boolean terminal = RequestContext.current().isInteractive();
+		// Without --duration a terminal refreshes until Enter, anything else gets one table
+		boolean untilEnter = terminal && !commandLine.hasOption("duration");
+		long duration = needLongOption("duration", 0);
+		if (duration < 0) {
+			throw new SodacanException("top --duration must not be negative");
+		}
+		long endMillis = System.currentTimeMillis() + Math.min(duration, Long.MAX_VALUE / 2000) * 1000;
+		while (true) {
+			if (terminal) {
+				System.out.print(CLEAR);
+			}
+			printTable();
+			if ((!untilEnter && System.currentTimeMillis() >= endMillis) || (terminal && enterPressed())) {
+				break;
+			}
+			if (terminal) {
+				System.out.println("\nPress Enter to return");
+			}
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (terminal && enterPressed()) {
+				break;
+			}
+		}
+	}
+
+	private boolean enterPressed() {
+		try {
+			if (System.in.available() > 0) {
+				while (System.in.available() > 0) {
+					System.in.read();
+				}
+				return true;
+			}
+		} catch (IOException e) {
+			return true;
+		}
+		return false;
+	}
+
+	protected void printTable() {
+		List<String> names = getFutures();
+		Collections.sort(names);
+		long now = System.currentTimeMillis();
+		System.out.printf("%-28s %-6s %10s %10s %9s %9s %9s %9s %10s %10s\n",
+				"Name", "Kind", "Records", "Rec/s", "Pending", "Behind", "Last", "CPU ms", "p50 us", "p99 us");
+		for (String name : names) {
+			Future<?> future = getFuture(name);
+			if (future==null) {
+				continue;
+			}
+			if (!(future instanceof Monitored)) {
+				System.out.printf("%-28s %-6s %s\n", name, "other", future.isDone() ? "done" : "running");
+				continue;
+			}
+			Monitored monitored = (Monitored)future;
+			ActivityStats activity = monitored.getActivity();
+			long pending = monitored.getPending();
+			long behind = monitored.getBehind();
+			long cpu = activity.getCpuNanos();
+			long last = activity.getLastEventMillis();
+			long callbacks = activity.getCallbacks().getCount();
+			System.out.printf("%-28s %-6s %10d %10.1f %9s %9s %9s %9s %10s %10s\n",
+					name,
+					monitored.getKind(),
+					activity.getRecords(),
+					activity.sampleRate(),
+					pending < 0 ? "-" : Long.toString(pending),
+					behind < 0 ? "-" : Long.toString(behind),
+					last==0 ? "never" : ago(now - last),
+					cpu < 0 ? "-" : Long.toString(cpu / 1_000_000),
+					callbacks==0 ? "-" : Long.toString(activity.getCallbacks().getValueAtPercentile(50) / 1000),
+					callbacks==0 ? "-" : Long.toString(activity.getCallbacks().getValueAtPercentile(99) / 1000));
+		}
+		if (names.isEmpty()) {
+			System.out.println("Nothing running, see topic follow and module run");
+		}
+	}
+
+	private static String ago( long millis ) {
+		if (millis < 1000) {
+			return millis + "ms";
+		}
+		if (millis < 120_000) {
+			return (millis / 1000) + "s";
+		}
+		return (millis / 60_000) + "m";
+	}
+
+}
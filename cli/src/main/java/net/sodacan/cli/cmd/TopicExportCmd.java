@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import java.nio.file.Path;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.TopicReader;
+import net.sodacan.cli.reduce.TopicReducer;
+import net.sodacan.cli.segment.SegmentWriter;
+import net.sodacan.messagebus.MB;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Export a topic to a segment file, see {@link SegmentWriter} for the format. As with <code>topic print</code>,
+ * only the latest record of each key is exported unless <code>--all</code> is given. With <code>--compress</code>
+ * each block of the file is deflated.</p>
+ * <p><code>topic import</code> loads the file into a topic, possibly in another mode.</p>
+ * @author John Churin
+ *
+ */
+public class TopicExportCmd extends CmdBase implements Action {
+
+	public TopicExportCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		String topicName = needArg(0, "topic name");
+		Path path = needPath(1);
+		Mode mode = needMode();
+		MB mb = mode.getMB();
+		long start = System.nanoTime();
+		SegmentWriter writer = new SegmentWriter(path, topicName, commandLine.hasOption("compress"));
+		try {
+			if (isAll()) {
+				new TopicReader(mb, topicName).read(0, (rec) -> {
+					writer.write(rec);
+					return true;
+				});
+			} else {
+				new TopicReducer(mb, topicName, needSpillBudget()).reduce((rec) -> {
+					writer.write(rec);
+					return true;
+				});
+			}
+			writer.close();
+		} catch (RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		System.out.printf("Exported %d records of %s to %s, %d bytes, in %.3f s\n", writer.getRecordCount(), topicName, path, writer.getPosition(), seconds);
+	}
+
+}
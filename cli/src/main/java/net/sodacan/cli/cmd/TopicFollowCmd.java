@@ -19,8 +19,10 @@ import org.apache.commons.cli.CommandLine;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
-import net.sodacan.messagebus.MB;
-import net.sodacan.messagebus.MBTopic;
+import net.sodacan.cli.RequestPrintStream;
+import net.sodacan.cli.follow.FollowManager;
+import net.sodacan.cli.output.OutputPipeline;
+import net.sodacan.messagebus.MBRecord;
 import net.sodacan.mode.Mode;
 
 public class TopicFollowCmd extends CmdBase implements Action {
@@ -34,10 +36,20 @@ public class TopicFollowCmd extends CmdBase implements Action {
 		init( commandLine, index);
 		String topicName = needArg(0, "topic name");
 		Mode mode = needMode();
-		MB mb = mode.getMB();
 		System.out.println("Topic " + topicName);
-		MBTopic mbt = mb.openTopic(topicName, 0);
-    	addFuture(topicName, mbt.follow((rec) -> System.out.println("Topic Print: " + rec)));
+		FollowManager manager = FollowManager.forMode(mode);
+		// A follow never holds up the consumer, by default it drops the oldest lines instead. It outlives
+		// the request, so it writes to the process's own output, never to a daemon client.
+		OutputPipeline<MBRecord> output = needOutputPipeline((rec, sb) -> sb.append("Topic Print: ").append(rec), OutputPipeline.Overflow.DROP,
+				RequestPrintStream.unrouted(System.out));
+		// Each follow gets its own name so that follow stop can tell them apart
+		String followName = reserveFutureName(topicName);
+		try {
+			addFuture(followName, manager.subscribe(followName, topicName, FollowManager.Start.BEGINNING, output));
+		} catch (RuntimeException e) {
+			deleteFuture(followName);
+			throw e;
+		}
 	}
 
 }
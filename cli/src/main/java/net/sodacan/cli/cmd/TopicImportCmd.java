@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.cmd;
+
+import org.apache.commons.cli.CommandLine;
+
+import net.sodacan.cli.Action;
+import net.sodacan.cli.CmdBase;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.cli.segment.SegmentReader;
+import net.sodacan.messagebus.MB;
+import net.sodacan.mode.Mode;
+/**
+ * <p>Load a segment file made by <code>topic export</code> into a topic of the current mode. The records are
+ * produced by <code>--threads</code> workers, records with the same key always by the same worker so that each key
+ * ends up with the same latest value it was exported with. The topic should already exist,
+ * for example by <code>initialize</code> in the target mode.</p>
+ * @author John Churin
+ *
+ */
+public class TopicImportCmd extends CmdBase implements Action {
+	// Records a worker takes from its queue at once
+	private static final int BATCH_SIZE = 100;
+
+	public TopicImportCmd( CommandContext cc) {
+		super( cc );
+	}
+
+	@Override
+	public void execute(CommandLine commandLine, int index) {
+		init( commandLine, index);
+		int threads = (int)needLongOption("threads", 4);
+		int inflight = (int)needLongOption("inflight", 1024);
+		try (SegmentReader reader = new SegmentReader(needPath(0))) {
+			String topicName = needArg(1, "topic name");
+			Mode mode = needMode();
+			MB mb = mode.getMB();
+			System.out.println("Importing " + reader.getRecordCount() + " records exported from " + reader.getTopicName());
+			long start = System.nanoTime();
+			long errors;
+			try (KeyedPipeline pipeline = new KeyedPipeline("import", threads, inflight, BATCH_SIZE)) {
+				reader.read((rec) -> {
+					String key = rec.getKey();
+					String value = rec.getValue();
+					pipeline.submit(key==null ? "" : key, () -> mb.produce(topicName, key, value));
+					return true;
+				});
+				pipeline.drain();
+				errors = pipeline.getErrorCount();
+				if (errors > 0) {
+					System.err.println(errors + " records failed, first error: " + pipeline.getFirstError());
+				}
+			}
+			long imported = reader.getRecordCount() - errors;
+			CliMetrics.published("MB", imported);
+			double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+			System.out.printf("Imported %d records into %s in %.3f s, %.1f records/sec\n", imported, topicName, seconds, imported / Math.max(seconds, 1e-9));
+		}
+	}
+
+}
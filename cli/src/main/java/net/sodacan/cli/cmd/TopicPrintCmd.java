@@ -14,18 +14,27 @@
  */
 package net.sodacan.cli.cmd;
 
-import java.util.Map;
-
 import org.apache.commons.cli.CommandLine;
 
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.LinePrinter;
+import net.sodacan.cli.TopicReader;
+import net.sodacan.cli.reduce.TopicReducer;
 import net.sodacan.messagebus.MB;
-import net.sodacan.messagebus.MBRecord;
-import net.sodacan.messagebus.MBTopic;
 import net.sodacan.mode.Mode;
-
+/**
+ * <p>Print the contents of a topic. The topic is read incrementally from the beginning rather than
+ * taking a snapshot so that large topics don't have to fit in memory.</p>
+ * <p>With <code>--all</code>, every record is printed as it arrives and reading stops as soon as
+ * the <code>--start</code>/<code>--limit</code> window is filled. Otherwise the topic is reduced to the most recent
+ * record for each key by a TopicReducer, which keeps only key to offset, spilling to disk past <code>--spill</code>,
+ * and then fetches just the winning records for printing.</p>
+ * <p>With <code>--sort</code>, the lines are ordered by key before the window is applied.</p>
+ * @author John Churin
+ *
+ */
 public class TopicPrintCmd extends CmdBase implements Action {
 	public TopicPrintCmd( CommandContext cc) {
 		super( cc );
@@ -38,8 +47,15 @@ public class TopicPrintCmd extends CmdBase implements Action {
 		Mode mode = needMode();
 		MB mb = mode.getMB();
 		System.out.println("Topic " + topicName);
-		MBTopic mbt = mb.openTopic(topicName, 0);
-		Map<String, MBRecord> map = mbt.snapshot();
-		map.forEach((k,v) -> System.out.println(k + "=" + v));
+		try (LinePrinter printer = needLinePrinter()) {
+			if (isAll()) {
+				TopicReader reader = new TopicReader(mb, topicName);
+				reader.read(0, (rec) -> printer.print(rec.getKey(), rec.getKey() + "=" + rec));
+			} else {
+				TopicReducer reducer = new TopicReducer(mb, topicName, needSpillBudget());
+				reducer.reduce((rec) -> printer.print(rec.getKey(), rec.getKey() + "=" + rec));
+			}
+			printer.finish();
+		}
 	}
 }
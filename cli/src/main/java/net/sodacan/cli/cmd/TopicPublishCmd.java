@@ -20,6 +20,12 @@ import net.sodacan.api.module.SimplePublisher;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.io.RowReader;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.cli.stats.LatencyHistogram;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
 import net.sodacan.mode.Mode;
 /**
  * <p>Publish an event (variable) to the named module's publish topic. 
@@ -28,10 +34,16 @@ import net.sodacan.mode.Mode;
  * Note: The topic must already exist. For that to happen, at least one other modules interested in the module named here
  * must have been loaded. 
  * </p>
+ * <p>With <code>--file &lt;file&gt;</code>, rows of <code>module,variable,value</code> (CSV or NDJSON, "-" for stdin)
+ * are published in bulk. Rows are spread over <code>--threads</code> workers, each reusing one publisher, with at most
+ * <code>--inflight</code> rows outstanding. Rows for the same module and variable are published in file order.
+ * The achieved rate and latency percentiles are printed at the end.</p>
  * @author John Churin
  *
  */
 public class TopicPublishCmd extends CmdBase implements Action {
+	// Rows a worker takes from its queue at once
+	private static final int BATCH_SIZE = 100;
 
 	public TopicPublishCmd( CommandContext cc) {
 		super( cc );
@@ -41,12 +53,52 @@ public class TopicPublishCmd extends CmdBase implements Action {
 	public void execute(CommandLine commandLine, int index) {
 		init( commandLine, index);
 		Mode mode = needMode();
+		if (commandLine.hasOption("file")) {
+			publishFile(mode, needInputOption("file"));
+			return;
+		}
 		String moduleName = this.needArg(0, "Module");
 		String variableName = this.needArg(1, "Variable");
 		String valueStr = this.needArg(2, "Value");
 
 		SimplePublisher sp = new SimplePublisher(mode);
-		sp.publish(moduleName, variableName, valueStr);
+		try (Span span = Tracer.span("SimplePublisher.publish").attribute("module", moduleName).attribute("variable", variableName)) {
+			sp.publish(moduleName, variableName, valueStr);
+		}
+		CliMetrics.published("SimplePublisher", 1);
+	}
+
+	protected void publishFile( Mode mode, String fileName ) {
+		int threads = (int)needLongOption("threads", 4);
+		int inflight = (int)needLongOption("inflight", 64);
+		ThreadLocal<SimplePublisher> publishers = ThreadLocal.withInitial(() -> new SimplePublisher(mode));
+		LatencyHistogram latency = new LatencyHistogram();
+		long start = System.nanoTime();
+		long errors;
+		try (RowReader reader = RowReader.open(fileName);
+			KeyedPipeline pipeline = new KeyedPipeline("publish", threads, inflight, BATCH_SIZE)) {
+			String[] row;
+			while ((row = reader.next())!=null) {
+				String moduleName = row[0];
+				String variableName = row[1];
+				String valueStr = row[2];
+				long submitted = System.nanoTime();
+				pipeline.submit(moduleName + "." + variableName, () -> {
+					publishers.get().publish(moduleName, variableName, valueStr);
+					CliMetrics.published("SimplePublisher", 1);
+					latency.record(System.nanoTime() - submitted);
+				});
+			}
+			pipeline.drain();
+			errors = pipeline.getErrorCount();
+			if (errors > 0) {
+				System.err.println(errors + " rows failed, first error: " + pipeline.getFirstError());
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		long published = latency.getCount();
+		System.out.printf("Published %d messages in %.3f s, %.1f msgs/sec\n", published, seconds, published / Math.max(seconds, 1e-9));
+		System.out.println("Latency: " + latency.format());
 	}
 
 }
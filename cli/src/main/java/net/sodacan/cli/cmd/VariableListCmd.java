@@ -14,15 +14,18 @@
  */
 package net.sodacan.cli.cmd;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.cli.CommandLine;
 
-import net.sodacan.api.module.ModuleContext;
-import net.sodacan.api.module.VariableContext;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.LinePrinter;
+import net.sodacan.cli.cache.CachedModule;
 import net.sodacan.mode.Mode;
-import net.sodacan.module.variables.Variables;
+import net.sodacan.module.variables.Variable;
 
 public class VariableListCmd extends CmdBase implements Action {
 
@@ -35,16 +38,29 @@ public class VariableListCmd extends CmdBase implements Action {
 		init( commandLine, index);
 		Mode mode = needMode();
 		String moduleName = this.needArg(0, "Module");
-		// Get the module
-		ModuleContext mctx = new ModuleContext(mode);
-		mctx.fetchModule(moduleName);
-		// Get the variable context
-		VariableContext vctx = mctx.getVariableContext();
-		vctx.restoreAll();
-		// And the current variable
-		Variables vs = vctx.getVariables();
-		// List them
-		System.out.println(vs);
+		// Get the module with its variables
+		CachedModule module = needModuleToRead(mode, moduleName);
+		// List them, each variable as it prints itself
+		if (isSort()) {
+			List<String> lines = new ArrayList<>();
+			synchronized (module) {
+				for (Variable variable : module.getVariableContext().getVariables().getListOfVariables()) {
+					lines.add(variable.toString());
+				}
+			}
+			try (LinePrinter printer = needLinePrinter()) {
+				for (String line : lines) {
+					printer.print(line, line);
+				}
+				printer.finish();
+			}
+		} else {
+			String variables;
+			synchronized (module) {
+				variables = module.getVariableContext().getVariables().toString();
+			}
+			System.out.println(variables);
+		}
 	}
 
 }
@@ -14,13 +14,23 @@
  */
 package net.sodacan.cli.cmd;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.cli.CommandLine;
 
-import net.sodacan.api.module.ModuleContext;
+import net.sodacan.SodacanException;
 import net.sodacan.api.module.VariableContext;
 import net.sodacan.cli.Action;
 import net.sodacan.cli.CmdBase;
 import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.cache.CachedModule;
+import net.sodacan.cli.io.RowReader;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
 import net.sodacan.mode.Mode;
 import net.sodacan.module.value.Value;
 
@@ -28,6 +38,10 @@ import net.sodacan.module.value.Value;
  * This command emulates a module processing cycle. The moduleContext and VariableContext are established as if
  * to process an incoming event. The variable is then set, as if done by the module itself. And then the save method is called
  * which publishes the (one) changed variable. See 'module publish' for a simple publish to a topic that may not have a module yet.
+ * <p>Several variables of a module can be set in one cycle, with a single save, as <code>var=value</code> pairs:
+ * <code>variable set lamp1 state=on level=40</code>. With <code>--file</code>, rows of module, variable and value are read
+ * and each run of rows for the same module is applied in one cycle. Add <code>--per-module</code> to gather all rows of a
+ * module into one cycle wherever they are in the file.</p>
  *  
  * @author John Churin
  *
@@ -42,21 +56,97 @@ public class VariableSetCmd extends CmdBase implements Action {
 	public void execute(CommandLine commandLine, int index) {
 		init( commandLine, index);
 		Mode mode = needMode();
+		if (commandLine.hasOption("file")) {
+			setFromFile(mode, needInputOption("file"), commandLine.hasOption("per-module"));
+			return;
+		}
 		String moduleName = this.needArg(0, "Module");
 		String variableName = this.needArg(1, "Variable");
-		String valueStr = this.needArg(2, "Value");
-		Value value = new Value(valueStr);
-		// Get the module
-		ModuleContext mctx = new ModuleContext(mode);
-		mctx.fetchModule(moduleName);
-		// Get the variable context
-		VariableContext vctx = mctx.getVariableContext();
-		// Get the variables
-		vctx.restoreAll();
-		// set the new variable value
-		vctx.setValue(variableName, value);
-		// And, finally, publish any changed variables
-		vctx.saveAndPublish();
+		List<String[]> assignments = new ArrayList<>();
+		if (variableName.indexOf('=') < 0) {
+			assignments.add(new String[] {variableName, this.needArg(2, "Value")});
+		} else {
+			for (int x = 1; x < argCount(); x++) {
+				assignments.add(splitAssignment(needArg(x, "Assignment")));
+			}
+		}
+		apply(mode, moduleName, assignments);
+	}
+
+	private String[] splitAssignment( String assignment ) {
+		int equals = assignment.indexOf('=');
+		if (equals < 1) {
+			throw new SodacanException("variable set: expected variable=value, not " + assignment);
+		}
+		return new String[] {assignment.substring(0, equals), assignment.substring(equals + 1)};
+	}
+
+	protected void setFromFile( Mode mode, String fileName, boolean perModule ) {
+		long start = System.nanoTime();
+		long variables = 0;
+		long cycles = 0;
+		// Insertion order keeps modules in the order they first appear
+		Map<String, List<String[]>> byModule = new LinkedHashMap<>();
+		String currentModule = null;
+		List<String[]> current = new ArrayList<>();
+		try (RowReader reader = RowReader.open(fileName)) {
+			String[] row;
+			while ((row = reader.next())!=null) {
+				variables++;
+				if (perModule) {
+					byModule.computeIfAbsent(row[0], (m) -> new ArrayList<>()).add(new String[] {row[1], row[2]});
+					continue;
+				}
+				if (currentModule!=null && !currentModule.equals(row[0])) {
+					apply(mode, currentModule, current);
+					cycles++;
+					current = new ArrayList<>();
+				}
+				currentModule = row[0];
+				current.add(new String[] {row[1], row[2]});
+			}
+		}
+		if (currentModule!=null) {
+			apply(mode, currentModule, current);
+			cycles++;
+		}
+		for (Map.Entry<String, List<String[]>> entry : byModule.entrySet()) {
+			apply(mode, entry.getKey(), entry.getValue());
+			cycles++;
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		System.out.printf("Set %d variables in %d save cycles in %.3f s\n", variables, cycles, seconds);
+	}
+
+	/**
+	 * Set variables of one module and save them all at once
+	 * @param mode
+	 * @param moduleName
+	 * @param assignments Pairs of variable name and value
+	 */
+	protected void apply( Mode mode, String moduleName, List<String[]> assignments ) {
+		// Get the module with its variables
+		CachedModule module = needModuleToWrite(mode, moduleName);
+		synchronized (module) {
+			VariableContext vctx = module.getVariableContext();
+			try {
+				// set the new variable values
+				for (String[] assignment : assignments) {
+					try (Span span = Tracer.span("VariableContext.setValue").attribute("variable", assignment[0])) {
+						vctx.setValue(assignment[0], new Value(assignment[1]));
+					}
+				}
+				// And, finally, publish any changed variables
+				try (Span span = Tracer.span("VariableContext.saveAndPublish")) {
+					vctx.saveAndPublish();
+				}
+			} catch (RuntimeException e) {
+				// We no longer know what state the cached variables are in
+				module.invalidate();
+				throw e;
+			}
+		}
+		CliMetrics.published("VariableContext", assignments.size());
 	}
 
 }
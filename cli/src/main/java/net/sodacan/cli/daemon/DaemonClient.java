@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * <p>A thin client for the soda daemon. It forwards its arguments and working directory, copies stdout and
+ * stderr from the daemon, and exits with the daemon's status. Its stdin is not forwarded, so commands that read
+ * from <code>-</code> need a file instead. It deliberately touches nothing but the JDK and this package
+ * so that it starts quickly.</p>
+ * <pre>soda-client [--socket &lt;path&gt;] [--stop | &lt;soda options and command&gt;]</pre>
+ * <p>The socket defaults to <code>$SODA_SOCKET</code>, then <code>soda.sock</code> in <code>$XDG_RUNTIME_DIR</code>, then
+ * <code>soda.sock</code> in a per-user directory in the temporary directory. The client only connects through a path
+ * that belongs to the user running it, see {@link DaemonSocket}.</p>
+ * @author John Churin
+ *
+ */
+public class DaemonClient {
+
+	public static void main(String[] args) {
+		Path path = DaemonSocket.defaultPath();
+		int first = 0;
+		if (args.length >= 2 && "--socket".equals(args[0])) {
+			path = Paths.get(args[1]);
+			first = 2;
+		}
+		String[] forward = Arrays.copyOfRange(args, first, args.length);
+		if (forward.length==0) {
+			forward = new String[] {"-h"};
+		} else if (forward.length==1 && "--stop".equals(forward[0])) {
+			forward = new String[] {DaemonProtocol.SHUTDOWN};
+		}
+		DaemonSocket.Client client;
+		try {
+			client = DaemonSocket.connect(path);
+		} catch (IOException e) {
+			System.err.println("No soda daemon at " + path + ", start one with 'soda daemon'");
+			System.exit(2);
+			return;
+		}
+		int status = 1;
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client.channel)));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client.channel)));
+			String cwd = Paths.get("").toAbsolutePath().toString();
+			DaemonProtocol.writeRequest(out, client.token, new DaemonProtocol.Request(cwd, forward));
+			status = copyResponse(in);
+			client.channel.close();
+		} catch (IOException e) {
+			System.err.println("Lost connection to soda daemon: " + e.getMessage());
+		}
+		System.exit(status);
+	}
+
+	private static int copyResponse( DataInputStream in ) throws IOException {
+		byte[] buffer = new byte[8192];
+		try {
+			while (true) {
+				byte type = in.readByte();
+				if (type==DaemonProtocol.EXIT) {
+					System.out.flush();
+					System.err.flush();
+					return in.readInt();
+				}
+				int length = in.readInt();
+				PrintStream target = (type==DaemonProtocol.STDERR) ? System.err : System.out;
+				while (length > 0) {
+					int n = in.read(buffer, 0, Math.min(length, buffer.length));
+					if (n < 0) {
+						throw new EOFException();
+					}
+					target.write(buffer, 0, n);
+					length -= n;
+				}
+				target.flush();
+			}
+		} catch (EOFException e) {
+			System.err.println("soda daemon closed the connection");
+			return 1;
+		}
+	}
+}
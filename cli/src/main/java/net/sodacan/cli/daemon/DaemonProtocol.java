@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>The wire format between soda-client and the daemon.</p>
+ * <p>A request is the magic number, the token, the client's working directory, the number of arguments and
+ * then each argument. Relative file names in the arguments are resolved against the client's directory. The client's
+ * stdin is not forwarded.
+ * The response is a series of frames: a type byte followed by a length and that many bytes of stdout
+ * or stderr, and finally an exit frame carrying the status.</p>
+ * @author John Churin
+ *
+ */
+public class DaemonProtocol {
+	// Changed whenever the request layout changes, so an old client is turned away rather than misread
+	public static final int MAGIC = 0x50444154;
+	public static final byte STDOUT = 1;
+	public static final byte STDERR = 2;
+	public static final byte EXIT = 3;
+	// A request with this single argument stops the daemon
+	public static final String SHUTDOWN = "--shutdown";
+
+	/**
+	 * What a client asks for
+	 */
+	public static class Request {
+		public final String workingDirectory;
+		public final String[] args;
+		public Request( String workingDirectory, String[] args ) {
+			this.workingDirectory = workingDirectory;
+			this.args = args;
+		}
+	}
+
+	public static void writeRequest( DataOutputStream out, String token, Request request ) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(token);
+		out.writeUTF(request.workingDirectory);
+		out.writeInt(request.args.length);
+		for (String arg : request.args) {
+			out.writeUTF(arg);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a request
+	 * @param in
+	 * @param token The token this daemon expects
+	 * @return The request, or null if it is not valid
+	 * @throws IOException
+	 */
+	public static Request readRequest( DataInputStream in, String token ) throws IOException {
+		if (in.readInt()!=MAGIC || !token.equals(in.readUTF())) {
+			return null;
+		}
+		String workingDirectory = in.readUTF();
+		int count = in.readInt();
+		if (count < 0 || count > 10000) {
+			return null;
+		}
+		String[] args = new String[count];
+		for (int a = 0; a < count; a++) {
+			args[a] = in.readUTF();
+		}
+		return new Request(workingDirectory, args);
+	}
+
+	/**
+	 * An OutputStream that sends everything written to it as frames of one type. Writes from
+	 * stdout and stderr are serialized on the shared DataOutputStream.
+	 */
+	public static class FrameOutputStream extends OutputStream {
+		private DataOutputStream out;
+		private byte type;
+
+		public FrameOutputStream( DataOutputStream out, byte type ) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write( int b ) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write( byte[] b, int off, int len ) throws IOException {
+			if (len==0) return;
+			synchronized (out) {
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+
+	public static void writeExit( DataOutputStream out, int status ) throws IOException {
+		synchronized (out) {
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.CommandContext;
+import net.sodacan.cli.RequestContext;
+import net.sodacan.cli.RequestPrintStream;
+
+/**
+ * <p>Serve soda-client requests from a warm CLI. Configuration, the mode and its plugins, and any
+ * message bus connections are set up once, when the daemon starts, and reused by every request.</p>
+ * <p>Requests are handled one at a time. System.out and System.err are replaced by streams that send what
+ * the request's own threads print to its client, while follows and module runtimes, whenever they were started,
+ * keep writing to the daemon's output. A request has the client's working directory and no stdin, see
+ * {@link RequestContext}.</p>
+ * @author John Churin
+ *
+ */
+public class DaemonServer {
+	private final static Logger logger = LoggerFactory.getLogger(DaemonServer.class);
+	private static volatile boolean running = false;
+	private CommandContext cc;
+	private Path path;
+
+	public DaemonServer( CommandContext cc, Path path ) {
+		this.cc = cc;
+		this.path = path;
+	}
+
+	/**
+	 * @return true if this process is serving requests
+	 */
+	public static boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Accept requests until a client asks us to shut down
+	 */
+	public void run() {
+		if (running) {
+			throw new SodacanException("This process is already a daemon");
+		}
+		try {
+			DaemonSocket.connect(path).channel.close();
+			throw new SodacanException("A daemon is already listening on " + path);
+		} catch (IOException e) {
+			// Nobody home, a leftover socket file is replaced by bind
+		}
+		PrintStream savedOut = System.out;
+		PrintStream savedErr = System.err;
+		DaemonSocket.Server server;
+		try {
+			server = DaemonSocket.bind(path);
+		} catch (IOException e) {
+			throw new SodacanException("Unable to listen on " + path, e);
+		}
+		running = true;
+		System.setOut(new RequestPrintStream(savedOut, false));
+		System.setErr(new RequestPrintStream(savedErr, true));
+		System.out.println("soda daemon listening on " + path);
+		try {
+			boolean more = true;
+			while (more) {
+				try (SocketChannel channel = server.channel.accept()) {
+					more = serve(channel, server.token);
+				} catch (IOException e) {
+					logger.warn("Daemon request failed: " + e);
+				}
+			}
+		} finally {
+			running = false;
+			System.setOut(savedOut);
+			System.setErr(savedErr);
+			try {
+				server.channel.close();
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+			}
+		}
+		System.out.println("soda daemon stopped");
+	}
+
+	/**
+	 * Handle one request
+	 * @return false if the daemon should stop
+	 * @throws IOException
+	 */
+	protected boolean serve( SocketChannel channel, String token ) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+		DaemonProtocol.Request request = DaemonProtocol.readRequest(in, token);
+		if (request==null) {
+			logger.warn("Ignoring invalid daemon request");
+			return true;
+		}
+		String[] args = request.args;
+		if (args.length==1 && DaemonProtocol.SHUTDOWN.equals(args[0])) {
+			DaemonProtocol.writeExit(out, 0);
+			return false;
+		}
+		PrintStream clientOut = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT), true, StandardCharsets.UTF_8);
+		PrintStream clientErr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR), true, StandardCharsets.UTF_8);
+		RequestContext context = new RequestContext(Paths.get(request.workingDirectory), false, false, clientOut, clientErr);
+		boolean[] ok = new boolean[] {false};
+		try {
+			context.run(() -> ok[0] = cc.execute(args));
+		} finally {
+			clientOut.flush();
+			clientErr.flush();
+		}
+		DaemonProtocol.writeExit(out, ok[0] ? 0 : 1);
+		return true;
+	}
+}
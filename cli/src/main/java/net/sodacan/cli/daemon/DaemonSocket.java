@@ -0,0 +1,260 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.daemon;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * <p>The local socket shared by the daemon and its clients. On Java 16 and later this is a Unix-domain socket
+ * at the given path, readable only by its owner. The CLI is built for Java 11 so the Unix-domain classes are
+ * reached by reflection. On older JVMs the daemon listens on a loopback TCP port instead and writes the port,
+ * along with a random token the client must present, to the path.</p>
+ * <p>A client can tell which is in use because the TCP fallback leaves a regular file at the path.</p>
+ * <p>By default the socket lives in <code>$XDG_RUNTIME_DIR</code>, or in a directory of its own in the temporary
+ * directory that only its owner can enter. Either way, nothing at the path is used, or removed, unless it belongs to
+ * the current user, and a token file is only believed if nobody else can read or write it. The directory holding
+ * the path must belong to the current user and not be writable by others, or belong to root, as a sticky temporary
+ * directory does.</p>
+ * @author John Churin
+ *
+ */
+public class DaemonSocket {
+	public static final String ENV_SOCKET = "SODA_SOCKET";
+	public static final String ENV_RUNTIME_DIR = "XDG_RUNTIME_DIR";
+	private static final String SOCKET_NAME = "soda.sock";
+	private static final Set<PosixFilePermission> OTHERS_WRITE = EnumSet.of(PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+	private static final Set<PosixFilePermission> OTHERS = EnumSet.of(
+			PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+			PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+	/**
+	 * @return The socket path from the environment, otherwise in the user's runtime directory, otherwise in a
+	 * per-user directory in the temporary directory
+	 */
+	public static Path defaultPath() {
+		String env = System.getenv(ENV_SOCKET);
+		if (env!=null && !env.isBlank()) {
+			return Paths.get(env);
+		}
+		String runtime = System.getenv(ENV_RUNTIME_DIR);
+		if (runtime!=null && !runtime.isBlank() && Files.isDirectory(Paths.get(runtime))) {
+			return Paths.get(runtime, SOCKET_NAME);
+		}
+		return Paths.get(System.getProperty("java.io.tmpdir"), "soda-" + System.getProperty("user.name"), SOCKET_NAME);
+	}
+
+	private static UserPrincipal currentUser( Path path ) throws IOException {
+		return path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+	}
+
+	private static boolean isOwnedByCurrentUser( Path path ) throws IOException {
+		return Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(currentUser(path));
+	}
+
+	/**
+	 * @return true if group or others have any of the permissions, false if not or if the file system can't say
+	 */
+	private static boolean isOpenToOthers( Path path, Set<PosixFilePermission> which ) throws IOException {
+		try {
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+			permissions.retainAll(which);
+			return !permissions.isEmpty();
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The directory holding the socket must be ours and not writable by others, or root's, such as a sticky /tmp
+	 * where nobody else can remove or replace our files. Anything else could swap the path under us.
+	 */
+	private static void checkDirectory( Path directory ) throws IOException {
+		UserPrincipal owner = Files.getOwner(directory);
+		if (owner.equals(currentUser(directory))) {
+			if (isOpenToOthers(directory, OTHERS_WRITE)) {
+				throw new IOException(directory + " is writable by other users, use a private directory for the daemon socket");
+			}
+		} else if (!"root".equals(owner.getName())) {
+			throw new IOException(directory + " belongs to " + owner.getName() + ", not to " + System.getProperty("user.name"));
+		}
+	}
+
+	/**
+	 * Refuse anything at the path that isn't ours, or a token file that others could read or have written
+	 */
+	private static void checkOwned( Path path ) throws IOException {
+		if (!isOwnedByCurrentUser(path)) {
+			throw new IOException(path + " belongs to " + Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName()
+					+ ", not to " + System.getProperty("user.name"));
+		}
+		if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) && isOpenToOthers(path, OTHERS)) {
+			throw new IOException(path + " is readable or writable by other users, remove it and restart the daemon");
+		}
+	}
+
+	private static ProtocolFamily unixFamily() {
+		try {
+			return StandardProtocolFamily.valueOf("UNIX");
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static SocketAddress unixAddress( Path path ) throws ReflectiveOperationException {
+		Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+		return (SocketAddress)addressClass.getMethod("of", Path.class).invoke(null, path);
+	}
+
+	/**
+	 * A bound server socket and the token that TCP clients must send
+	 */
+	public static class Server {
+		public final ServerSocketChannel channel;
+		public final String token;
+		Server( ServerSocketChannel channel, String token ) {
+			this.channel = channel;
+			this.token = token;
+		}
+	}
+
+	/**
+	 * Listen on the path. The caller must first make sure that no other daemon is using it.
+	 * @param path The socket path
+	 * @return The server
+	 * @throws IOException
+	 */
+	public static Server bind( Path path ) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		if (!Files.exists(directory)) {
+			try {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} catch (UnsupportedOperationException e) {
+				Files.createDirectories(directory);
+			}
+		}
+		checkDirectory(directory);
+		if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			// Only ever remove our own leftovers
+			if (!isOwnedByCurrentUser(path)) {
+				throw new IOException(path + " belongs to " + Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName() + ", not removing it");
+			}
+			Files.delete(path);
+		}
+		ProtocolFamily unix = unixFamily();
+		if (unix!=null) {
+			try {
+				ServerSocketChannel channel = (ServerSocketChannel)ServerSocketChannel.class
+						.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+				channel.bind(unixAddress(path));
+				ownerOnly(path);
+				return new Server(channel, "");
+			} catch (ReflectiveOperationException e) {
+				// Fall through to TCP
+			}
+		}
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		byte[] random = new byte[24];
+		new SecureRandom().nextBytes(random);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+		int port = ((InetSocketAddress)channel.getLocalAddress()).getPort();
+		writeOwnerOnly(path, port + " " + token + "\n");
+		return new Server(channel, token);
+	}
+
+	/**
+	 * Create a file that nobody else can read, even for a moment, and write to it. The path was
+	 * deleted by bind, a file that appears in the meantime is refused rather than written to.
+	 */
+	private static void writeOwnerOnly( Path path, String contents ) throws IOException {
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system, rely on the directory permissions
+			Files.createFile(path);
+		}
+		Files.writeString(path, contents, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private static void ownerOnly( Path path ) {
+		try {
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+		} catch (IOException | UnsupportedOperationException e) {
+			// Not a POSIX file system, rely on the directory permissions
+		}
+	}
+
+	/**
+	 * A connected client socket and the token to present
+	 */
+	public static class Client {
+		public final SocketChannel channel;
+		public final String token;
+		Client( SocketChannel channel, String token ) {
+			this.channel = channel;
+			this.token = token;
+		}
+	}
+
+	/**
+	 * Connect to a daemon
+	 * @param path The socket path
+	 * @return The connection
+	 * @throws IOException If no daemon is listening
+	 */
+	public static Client connect( Path path ) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			throw new IOException("No daemon socket at " + path);
+		}
+		checkDirectory(path.toAbsolutePath().getParent());
+		checkOwned(path);
+		if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+			String[] contents = Files.readString(path).strip().split(" ");
+			SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(contents[0])));
+			return new Client(channel, contents.length > 1 ? contents[1] : "");
+		}
+		ProtocolFamily unix = unixFamily();
+		if (unix==null) {
+			throw new IOException("No daemon socket at " + path);
+		}
+		try {
+			SocketChannel channel = (SocketChannel)SocketChannel.class
+					.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+			channel.connect(unixAddress(path));
+			return new Client(channel, "");
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Unix-domain sockets are not available in this JVM", e);
+		}
+	}
+}
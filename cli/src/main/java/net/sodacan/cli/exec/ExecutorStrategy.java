@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.exec;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Decides what runs follows, module runtimes and other background work. The choices are:</p>
+ * <ul>
+ * <li><b>virtual</b> A virtual thread per task. Needs Java 21 or later. Thousands of module runtimes cost
+ * little more than their heap.</li>
+ * <li><b>platform</b> A platform thread per task, reused once a task ends, with no limit on how many.</li>
+ * <li><b>platform:n</b> A pool of at most <i>n</i> platform threads. Follows and module runtimes never end, so
+ * a task that would need thread <i>n</i>+1 is refused rather than queued where it would never start.</li>
+ * <li><b>auto</b> virtual when the JVM has it, otherwise platform. This is the default.</li>
+ * </ul>
+ * <p>Short tasks, such as writing buffered output, get their own executor so that they never wait behind
+ * long running ones: virtual threads if the JVM has them, otherwise a small pool of platform threads.</p>
+ * <p>Virtual threads are found by reflection so that the tool still builds and runs on Java 11.</p>
+ * @author John Churin
+ *
+ */
+public class ExecutorStrategy {
+	private final static Logger logger = LoggerFactory.getLogger(ExecutorStrategy.class);
+	public static final String AUTO = "auto";
+	public static final String VIRTUAL = "virtual";
+	public static final String PLATFORM = "platform";
+
+	private String spec;
+	private String description;
+	private volatile ExecutorService executorService = null;
+	private volatile ExecutorService shortTaskExecutor = null;
+
+	/**
+	 * @param spec auto, virtual, platform or platform:n
+	 */
+	public ExecutorStrategy( String spec ) {
+		this.spec = spec;
+		// Check the spelling now rather than on first use
+		parseThreads();
+	}
+
+	/**
+	 * @return The executor, created on first use
+	 */
+	public ExecutorService getExecutorService() {
+		ExecutorService es = executorService;
+		if (es==null) {
+			synchronized (this) {
+				es = executorService;
+				if (es==null) {
+					es = create();
+					executorService = es;
+				}
+			}
+		}
+		return es;
+	}
+
+	/**
+	 * @return The executor for tasks that finish quickly, created on first use
+	 */
+	public ExecutorService getShortTaskExecutor() {
+		ExecutorService es = shortTaskExecutor;
+		if (es==null) {
+			synchronized (this) {
+				es = shortTaskExecutor;
+				if (es==null) {
+					es = newVirtualThreadPerTaskExecutor();
+					if (es==null || PLATFORM.equals(spec) || spec.startsWith(PLATFORM + ":")) {
+						es = newShortTaskExecutor(java.lang.Runtime.getRuntime().availableProcessors());
+					}
+					shortTaskExecutor = es;
+				}
+			}
+		}
+		return es;
+	}
+
+	/**
+	 * @return What is actually in use, or what was asked for if nothing has run yet
+	 */
+	public String getDescription() {
+		if (description==null) {
+			return spec;
+		}
+		return description;
+	}
+
+	/**
+	 * @return The thread limit, zero for none
+	 */
+	private int parseThreads() {
+		if (AUTO.equals(spec) || VIRTUAL.equals(spec) || PLATFORM.equals(spec)) {
+			return 0;
+		}
+		if (spec.startsWith(PLATFORM + ":")) {
+			try {
+				int threads = Integer.parseInt(spec.substring(PLATFORM.length() + 1));
+				if (threads > 0) {
+					return threads;
+				}
+			} catch (NumberFormatException e) {
+			}
+		}
+		throw new SodacanException("Unknown executor " + spec + ", use auto, virtual, platform or platform:<threads>");
+	}
+
+	private ExecutorService create() {
+		if (AUTO.equals(spec) || VIRTUAL.equals(spec)) {
+			ExecutorService es = newVirtualThreadPerTaskExecutor();
+			if (es!=null) {
+				description = VIRTUAL;
+				return es;
+			}
+			if (VIRTUAL.equals(spec)) {
+				throw new SodacanException("Virtual threads need Java 21 or later, this is Java " + System.getProperty("java.version"));
+			}
+		}
+		int threads = parseThreads();
+		if (threads==0) {
+			description = PLATFORM;
+			logger.debug("Executor is " + description);
+			return newCachedExecutor();
+		}
+		description = PLATFORM + ":" + threads;
+		logger.debug("Executor is " + description);
+		return newPlatformExecutor(threads);
+	}
+
+	/**
+	 * @return An executor that starts a virtual thread per task, or null if this JVM can't
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)method.invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// Java 19 and 20 have it as a preview feature which is refused unless enabled
+			logger.debug("Virtual threads not available", e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * A pool of daemon threads for long running tasks that grows as needed. Idle threads are let go after a minute.
+	 */
+	public static ExecutorService newCachedExecutor() {
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemonThreads("soda-worker-"));
+	}
+
+	/**
+	 * A pool of up to <code>threads</code> daemon threads for long running tasks. There is no queue, a task
+	 * that finds every thread busy is refused with a SodacanException. Idle threads are let go after a minute.
+	 */
+	public static ExecutorService newPlatformExecutor( int threads ) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				daemonThreads("soda-worker-"), (runnable, pool) -> {
+			throw new SodacanException("All " + threads + " worker threads are busy with follows and modules, "
+					+ "use --executor platform:<threads> for more, platform for no limit, or virtual on Java 21");
+		});
+		return executor;
+	}
+
+	/**
+	 * A pool of <code>threads</code> daemon threads for short tasks, which queue when all are busy
+	 */
+	public static ExecutorService newShortTaskExecutor( int threads ) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreads("soda-task-"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static ThreadFactory daemonThreads( String prefix ) {
+		AtomicInteger counter = new AtomicInteger();
+		return (runnable) -> {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.follow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.messagebus.MBTopic;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>All follows for one mode. A topic is followed at most once no matter how many listeners are
+ * interested in it, so a second <code>topic follow</code> of the same topic, or stopping one of several,
+ * does not open or close a consumer. The message bus has no multi-topic follow, so there is one consumer
+ * thread per followed topic and no other thread: listeners are called on it and must be quick, handing
+ * anything slow, such as printing, to an {@link net.sodacan.cli.output.OutputPipeline}.</p>
+ * <p>A subscription either starts from the beginning of the topic, as <code>topic follow</code> does, or sees only
+ * records that arrive from now on, as the event counters of hosted modules do. If the topic is already followed, a
+ * subscription from the beginning replays the topic on a follow of its own, while records of the shared follow are
+ * held back for it, and joins the shared follow once the replay has caught up with them. So only a late follow from
+ * the beginning costs a second consumer, and only until it has caught up.</p>
+ * <p>The underlying follow of a topic is cancelled when its last subscription is cancelled.</p>
+ * @author John Churin
+ *
+ */
+public class FollowManager {
+	private final static Logger logger = LoggerFactory.getLogger(FollowManager.class);
+	private static Map<String, FollowManager> managers = new ConcurrentHashMap<>();
+
+	private String modeName;
+	private MB mb;
+	private Map<String, TopicFollow> topics = new ConcurrentHashMap<>();
+
+	/**
+	 * Where a subscription starts
+	 */
+	public enum Start {
+		/** Everything in the topic, followed by what arrives later */
+		BEGINNING,
+		/** Only records that arrive after the topic has been read up to its end */
+		NOW
+	}
+
+	/**
+	 * The single follow of a topic and whoever is listening to it
+	 */
+	private static class TopicFollow {
+		String topicName;
+		Future<?> future;
+		volatile Thread consumer;
+		volatile long lastOffset = -1;
+		volatile boolean caughtUp = false;
+		AtomicInteger pending = new AtomicInteger();
+		CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+		TopicFollow( String topicName ) {
+			this.topicName = topicName;
+		}
+	}
+
+	/**
+	 * Get the follow manager for a mode, starting it if needed
+	 * @param mode
+	 * @return The manager shared by all follows in this mode
+	 */
+	public static FollowManager forMode( Mode mode ) {
+		return managers.computeIfAbsent(mode.getModeName(), (name) -> new FollowManager(name, mode.getMB()));
+	}
+
+	protected FollowManager( String modeName, MB mb ) {
+		this.modeName = modeName;
+		this.mb = mb;
+	}
+
+	/**
+	 * Start listening to a topic, through the existing follow of the topic if there is one
+	 * @param name Name of the subscription, as shown in follow list
+	 * @param topicName Topic to follow
+	 * @param start Whether the listener sees the whole topic or only what arrives from now on
+	 * @param listener Called on a consumer thread of the topic for each record
+	 * @return A subscription which, when cancelled, stops this listener
+	 */
+	public Subscription subscribe( String name, String topicName, Start start, Consumer<MBRecord> listener ) {
+		Subscription subscription = new Subscription(this, name, topicName, start, listener);
+		synchronized (topics) {
+			TopicFollow follow = topics.get(topicName);
+			if (follow==null) {
+				follow = new TopicFollow(topicName);
+				follow.subscriptions.add(subscription);
+				MBTopic mbt = mb.openTopic(topicName, 0);
+				TopicFollow target = follow;
+				follow.future = mbt.follow((record) -> dispatch(target, record));
+				topics.put(topicName, follow);
+				logger.debug("Mode " + modeName + " now following " + topicName);
+			} else {
+				// Until the first record arrives the consumer thread isn't known, dispatch sets it then
+				subscription.getActivity().setThread(follow.consumer);
+				if (start==Start.BEGINNING) {
+					subscription.replay(mb.openTopic(topicName, 0));
+				}
+				follow.subscriptions.add(subscription);
+			}
+		}
+		return subscription;
+	}
+
+	/**
+	 * Remove a subscription, stopping the follow of its topic when nobody is left listening
+	 * @param subscription
+	 */
+	protected void unsubscribe( Subscription subscription ) {
+		synchronized (topics) {
+			TopicFollow follow = topics.get(subscription.getTopicName());
+			if (follow==null || !follow.subscriptions.remove(subscription)) {
+				return;
+			}
+			if (follow.subscriptions.isEmpty()) {
+				topics.remove(follow.topicName);
+				follow.future.cancel(true);
+				logger.debug("Mode " + modeName + " stopped following " + follow.topicName);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of topics followed, each with a single consumer
+	 */
+	public int getTopicCount() {
+		return topics.size();
+	}
+
+	/**
+	 * @param topicName
+	 * @return Records of this topic received from the consumer and still being handed to its listeners
+	 */
+	public int getPending( String topicName ) {
+		TopicFollow follow = topics.get(topicName);
+		if (follow==null) {
+			return 0;
+		}
+		return follow.pending.get();
+	}
+
+	/**
+	 * @param topicName
+	 * @return The highest offset the consumer of this topic has read, or -1 if none yet. The message bus
+	 * can't tell us the end of a topic, so this is as close as we get.
+	 */
+	public long getLastOffset( String topicName ) {
+		TopicFollow follow = topics.get(topicName);
+		if (follow==null) {
+			return -1;
+		}
+		return follow.lastOffset;
+	}
+
+	/**
+	 * @return Records of all followed topics still being handed to their listeners
+	 */
+	public int getPending() {
+		int pending = 0;
+		for (TopicFollow follow : topics.values()) {
+			pending += follow.pending.get();
+		}
+		return pending;
+	}
+
+	/**
+	 * Called on the consumer thread of a topic. A slow listener holds up this topic and no other.
+	 */
+	private void dispatch( TopicFollow follow, MBRecord record ) {
+		CliMetrics.followed(record);
+		if (follow.consumer==null) {
+			// Under the lock subscribe holds, so a subscription joining now gets the thread one way or the other
+			synchronized (topics) {
+				follow.consumer = Thread.currentThread();
+				for (Subscription subscription : follow.subscriptions) {
+					subscription.getActivity().setThread(follow.consumer);
+				}
+			}
+		}
+		if (!record.isEOF() && record.getOffset() > follow.lastOffset) {
+			follow.lastOffset = record.getOffset();
+		}
+		follow.pending.incrementAndGet();
+		try {
+			for (Subscription subscription : follow.subscriptions) {
+				subscription.deliver(record, follow.caughtUp);
+			}
+		} finally {
+			follow.pending.decrementAndGet();
+		}
+		if (record.isEOF()) {
+			// Everything in the topic when the follow started has been read, the rest is new
+			follow.caughtUp = true;
+		}
+	}
+}
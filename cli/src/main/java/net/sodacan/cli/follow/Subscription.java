@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.follow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.cli.output.OutputPipeline;
+import net.sodacan.cli.stats.ActivityStats;
+import net.sodacan.cli.stats.Monitored;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.messagebus.MBTopic;
+
+/**
+ * <p>One listener on a followed topic. A subscription is a Future so that it can be kept with the other
+ * futures of a session: cancelling it stops this listener and nothing else.</p>
+ * @author John Churin
+ *
+ */
+public class Subscription implements Future<Void>, Monitored {
+	private final static Logger logger = LoggerFactory.getLogger(Subscription.class);
+	private FollowManager manager;
+	private String name;
+	private String topicName;
+	private FollowManager.Start start;
+	private Consumer<MBRecord> listener;
+	private CountDownLatch done = new CountDownLatch(1);
+	private ActivityStats activity = new ActivityStats();
+	private volatile long lastOffset = -1;
+	// While replaying, records of the shared follow wait here
+	private List<MBRecord> held = null;
+	private Future<?> replay = null;
+
+	protected Subscription( FollowManager manager, String name, String topicName, FollowManager.Start start, Consumer<MBRecord> listener ) {
+		this.manager = manager;
+		this.name = name;
+		this.topicName = topicName;
+		this.start = start;
+		this.listener = listener;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTopicName() {
+		return topicName;
+	}
+
+	/**
+	 * @return Number of records passed to the listener so far
+	 */
+	public long getDelivered() {
+		return activity.getRecords();
+	}
+
+	@Override
+	public String getKind() {
+		return "follow";
+	}
+
+	@Override
+	public ActivityStats getActivity() {
+		return activity;
+	}
+
+	/**
+	 * @return Records of this topic being handed to listeners, plus lines waiting to be written
+	 */
+	@Override
+	public long getPending() {
+		long pending = manager.getPending(topicName);
+		if (listener instanceof OutputPipeline) {
+			pending += ((OutputPipeline<?>)listener).getPending();
+		}
+		return pending;
+	}
+
+	/**
+	 * @return Offset of the last record given to the listener, -1 if none yet
+	 */
+	public long getLastOffset() {
+		return lastOffset;
+	}
+
+	/**
+	 * Records read from the topic that this follow hasn't finished with: those not yet given to the
+	 * listener, plus lines still waiting to be written.
+	 */
+	@Override
+	public long getBehind() {
+		long topicOffset = manager.getLastOffset(topicName);
+		long behind = topicOffset < 0 ? 0 : topicOffset - lastOffset;
+		if (listener instanceof OutputPipeline) {
+			behind += ((OutputPipeline<?>)listener).getPending();
+		}
+		return Math.max(behind, 0);
+	}
+
+	/**
+	 * @return Number of records the listener's output stage dropped, zero if it has none
+	 */
+	public long getDropped() {
+		if (listener instanceof OutputPipeline) {
+			return ((OutputPipeline<?>)listener).getDropped();
+		}
+		return 0;
+	}
+
+	/**
+	 * Called on the consumer thread of the shared follow only
+	 * @param caughtUp Whether the shared follow has read what was in the topic when it started
+	 */
+	protected void deliver( MBRecord record, boolean caughtUp ) {
+		if (start==FollowManager.Start.NOW && !caughtUp) {
+			return;
+		}
+		synchronized (this) {
+			if (held!=null) {
+				if (!record.isEOF()) {
+					held.add(record);
+				}
+				return;
+			}
+		}
+		deliverOnce(record);
+	}
+
+	/**
+	 * Start with a replay of the topic on a follow of its own, because the shared follow is already past the beginning
+	 * @param topic The topic, opened at the beginning
+	 */
+	protected synchronized void replay( MBTopic topic ) {
+		held = new ArrayList<>();
+		replay = topic.follow(this::replayed);
+	}
+
+	/**
+	 * Called on the replay's consumer thread. Once the replay reaches the end of the topic, or the first record
+	 * held back from the shared follow, the held records are delivered and the replay is stopped.
+	 */
+	private void replayed( MBRecord record ) {
+		synchronized (this) {
+			if (held==null) {
+				return;
+			}
+			if (record.isEOF() || (!held.isEmpty() && record.getOffset() >= held.get(0).getOffset())) {
+				if (record.isEOF()) {
+					deliverOnce(record);
+				}
+				for (MBRecord waiting : held) {
+					deliverOnce(waiting);
+				}
+				held = null;
+				replay.cancel(true);
+				return;
+			}
+		}
+		deliverOnce(record);
+	}
+
+	/**
+	 * Give a record to the listener unless it already had it, from the replay or the shared follow
+	 */
+	private void deliverOnce( MBRecord record ) {
+		if (done.getCount()==0 || (!record.isEOF() && record.getOffset() <= lastOffset)) {
+			return;
+		}
+		long begin = System.nanoTime();
+		try {
+			listener.accept(record);
+		} catch (Exception e) {
+			// One broken listener must not stop the others
+			logger.error("Follow " + name + " failed and is stopped", e);
+			cancel(false);
+			return;
+		}
+		activity.recordCallback(System.nanoTime() - begin);
+		if (!record.isEOF()) {
+			lastOffset = record.getOffset();
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (done.getCount()==0) {
+			return false;
+		}
+		done.countDown();
+		manager.unsubscribe(this);
+		synchronized (this) {
+			held = null;
+			if (replay!=null) {
+				replay.cancel(true);
+			}
+		}
+		if (listener instanceof OutputPipeline) {
+			((OutputPipeline<?>)listener).close();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return done.getCount()==0;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount()==0;
+	}
+
+	/**
+	 * Wait until the subscription is cancelled, which is the only way it ends
+	 */
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		done.await();
+		throw new CancellationException("Stopped following " + topicName);
+	}
+
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("Still following " + topicName);
+		}
+		throw new CancellationException("Stopped following " + topicName);
+	}
+
+	@Override
+	public String toString() {
+		return name + " topic=" + topicName + " delivered=" + getDelivered() + " dropped=" + getDropped();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.host;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sodacan.cli.follow.Subscription;
+import net.sodacan.cli.stats.ActivityStats;
+import net.sodacan.cli.stats.Monitored;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * <p>One module running in a {@link ModuleHost}. It is a Future so it can be kept, and stopped, with the
+ * other futures of a session. Stopping it stops the runtime and the counting of its inbound events.</p>
+ * @author John Churin
+ *
+ */
+public class HostedModule implements Future<Void>, Monitored {
+	private ModuleHost host;
+	private String name;
+	private Future<?> runtime;
+	private List<Subscription> counters = new ArrayList<>();
+	private ActivityStats activity = new ActivityStats();
+	private long startNanos = System.nanoTime();
+	private long lastEvents = 0;
+	private long lastNanos = startNanos;
+
+	protected HostedModule( ModuleHost host, String name ) {
+		this.host = host;
+		this.name = name;
+	}
+
+	protected void setRuntime( Future<?> runtime ) {
+		this.runtime = runtime;
+	}
+
+	protected void addCounter( Subscription subscription ) {
+		counters.add(subscription);
+	}
+
+	/**
+	 * Called for each record on a topic the module subscribes to
+	 */
+	protected void count( MBRecord record ) {
+		if (!record.isEOF()) {
+			activity.recordEvent();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Records that arrived on the topics this module subscribes to since it was started, what was
+	 * already in them is not counted
+	 */
+	public long getEvents() {
+		return activity.getRecords();
+	}
+
+	@Override
+	public String getKind() {
+		return "module";
+	}
+
+	/**
+	 * @return Activity of the module. Events are counted from its subscribed topics, CPU time is that of
+	 * the thread running the Runtime, there is no callback latency.
+	 */
+	@Override
+	public ActivityStats getActivity() {
+		return activity;
+	}
+
+	/**
+	 * The Runtime does not expose its queue
+	 */
+	@Override
+	public long getPending() {
+		return -1;
+	}
+
+	/**
+	 * Nor how far through its topics it is
+	 */
+	@Override
+	public long getBehind() {
+		return -1;
+	}
+
+	/**
+	 * @return Inbound events per second since the module was started
+	 */
+	public double getRate() {
+		double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+		return seconds > 0 ? getEvents() / seconds : 0;
+	}
+
+	/**
+	 * @return Inbound events per second since the last call of this method, or since the start
+	 */
+	public synchronized double getRecentRate() {
+		long now = System.nanoTime();
+		long count = getEvents();
+		double seconds = (now - lastNanos) / 1_000_000_000.0;
+		double rate = seconds > 0 ? (count - lastEvents) / seconds : 0;
+		lastNanos = now;
+		lastEvents = count;
+		return rate;
+	}
+
+	/**
+	 * @return running, stopped or failed with the reason
+	 */
+	public String getState() {
+		if (runtime==null || !runtime.isDone()) {
+			return "running";
+		}
+		if (runtime.isCancelled()) {
+			return "stopped";
+		}
+		try {
+			runtime.get();
+			return "ended";
+		} catch (ExecutionException e) {
+			return "failed: " + e.getCause().getMessage();
+		} catch (InterruptedException | CancellationException e) {
+			return "stopped";
+		}
+	}
+
+	/**
+	 * Stop counting inbound events
+	 */
+	protected void stopCounting() {
+		for (Subscription counter : counters) {
+			counter.cancel(false);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		stopCounting();
+		host.remove(this);
+		return runtime.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return runtime.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return runtime.isDone();
+	}
+
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		runtime.get();
+		return null;
+	}
+
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		runtime.get(timeout, unit);
+		return null;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.host;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.SodacanException;
+import net.sodacan.api.module.ModuleContext;
+import net.sodacan.cli.cache.ModuleCache;
+import net.sodacan.cli.follow.FollowManager;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.mode.Mode;
+import net.sodacan.runtime.Runtime;
+
+/**
+ * <p>Runs any number of modules of one mode in this process, each in its own Runtime.</p>
+ * <p>A Runtime blocks for as long as it runs, so each needs a thread of its own from the session's executor,
+ * see <code>--executor</code>. On virtual threads that is cheap however many modules there are.</p>
+ * <p>Inbound events are counted by following each module's subscribed topics through the mode's
+ * {@link FollowManager}, so modules that share a topic share one consumer for counting.</p>
+ * @author John Churin
+ *
+ */
+public class ModuleHost {
+	private final static Logger logger = LoggerFactory.getLogger(ModuleHost.class);
+	private static Map<String, ModuleHost> hosts = new ConcurrentHashMap<>();
+
+	private Mode mode;
+	private Map<String, HostedModule> modules = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Get the host for a mode, creating it if needed
+	 * @param mode
+	 * @return The host of this mode
+	 */
+	public static ModuleHost forMode( Mode mode ) {
+		return hosts.computeIfAbsent(mode.getModeName(), (name) -> new ModuleHost(mode));
+	}
+
+	/**
+	 * @param mode
+	 * @return The host of this mode, or null if no module has been run in it
+	 */
+	public static ModuleHost get( Mode mode ) {
+		return hosts.get(mode.getModeName());
+	}
+
+	protected ModuleHost( Mode mode ) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Start a module unless it is already running here
+	 * @param moduleName
+	 * @param executorService Runs the Runtime
+	 * @return The hosted module
+	 */
+	public synchronized HostedModule start( String moduleName, ExecutorService executorService ) {
+		HostedModule hosted = modules.get(moduleName);
+		if (hosted!=null && !hosted.isDone()) {
+			throw new SodacanException("Module " + moduleName + " is already running in mode " + mode.getModeName());
+		}
+		// From now on the runtime changes this module's state
+		ModuleCache.getInstance().invalidate(mode.getModeName(), moduleName);
+		hosted = new HostedModule(this, moduleName);
+		FollowManager followManager = FollowManager.forMode(mode);
+		// Only events from now on, so that every module's rate means the same whether or not its topics were followed already
+		for (String topic : subscriberTopics(mode, moduleName)) {
+			hosted.addCounter(followManager.subscribe(moduleName + "<" + topic, topic, FollowManager.Start.NOW, hosted::count));
+		}
+		Runtime runtime = new Runtime(mode, moduleName);
+		HostedModule target = hosted;
+		try {
+			hosted.setRuntime(executorService.submit(() -> {
+				target.getActivity().setThread(Thread.currentThread());
+				runtime.run();
+			}));
+		} catch (RuntimeException e) {
+			// No thread for it, don't leave it counting events as if it were running
+			hosted.stopCounting();
+			throw e;
+		}
+		modules.put(moduleName, hosted);
+		logger.debug("Started module " + moduleName + " in mode " + mode.getModeName());
+		return hosted;
+	}
+
+	/**
+	 * The topics a module subscribes to. They come from the module's definition, so its state is not restored.
+	 * @param mode
+	 * @param moduleName
+	 * @return The topic names, possibly none
+	 */
+	public static List<String> subscriberTopics( Mode mode, String moduleName ) {
+		ModuleContext moduleContext = new ModuleContext(mode);
+		try (Span span = Tracer.span("ModuleContext.fetchModule").attribute("module", moduleName)) {
+			moduleContext.fetchModule(moduleName);
+		}
+		List<String> topics = moduleContext.getVariableContext().getListOfSubscriberTopics();
+		if (topics==null) {
+			return new ArrayList<>();
+		}
+		return topics;
+	}
+
+	protected void remove( HostedModule hosted ) {
+		modules.remove(hosted.getName(), hosted);
+	}
+
+	/**
+	 * Wait until the modules here have caught up. The Runtime does not expose its queue so quiet means
+	 * nothing is waiting in the follows of this mode and no module has seen an event, or used CPU, for
+	 * <code>settleMillis</code>.
+	 * @param settleMillis How long things must stay still
+	 * @param timeoutMillis Give up after this long
+	 * @return true if quiet, false if the wait timed out
+	 * @throws InterruptedException
+	 */
+	public boolean awaitQuiet( long settleMillis, long timeoutMillis ) throws InterruptedException {
+		FollowManager followManager = FollowManager.forMode(mode);
+		long start = System.nanoTime();
+		long lastChange = start;
+		long lastSignature = -1;
+		while (true) {
+			long now = System.nanoTime();
+			long signature = 0;
+			for (HostedModule hosted : modules.values()) {
+				signature += hosted.getEvents() + hosted.getActivity().getCpuNanos();
+			}
+			if (followManager.getPending() > 0 || signature!=lastSignature) {
+				lastChange = now;
+				lastSignature = signature;
+			} else if (now - lastChange >= settleMillis * 1_000_000L) {
+				return true;
+			}
+			if (now - start >= timeoutMillis * 1_000_000L) {
+				return false;
+			}
+			Thread.sleep(Math.max(1, settleMillis / 4));
+		}
+	}
+
+	/**
+	 * @param moduleName
+	 * @return true if the module was started here and its Runtime has not ended
+	 */
+	public boolean isRunning( String moduleName ) {
+		HostedModule hosted = modules.get(moduleName);
+		return hosted!=null && !hosted.isDone();
+	}
+
+	/**
+	 * @return The modules running, or ended, here in name order
+	 */
+	public List<HostedModule> getModules() {
+		return new ArrayList<>(modules.values());
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Read <code>module,variable,value</code> rows from a file, or from stdin if the file name is "-".</p>
+ * <p>Each line is either CSV, with optional double-quoted fields, or an NDJSON object with
+ * <code>module</code>, <code>variable</code> and <code>value</code> properties. Blank lines, lines starting with '#'
+ * and a <code>module,variable,value</code> header line are skipped.</p>
+ * @author John Churin
+ *
+ */
+public class RowReader implements Closeable {
+	public static final String[] COLUMNS = new String[] {"module","variable","value"};
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private BufferedReader reader;
+	private String fileName;
+	private long lineNumber = 0;
+	private long rowCount = 0;
+
+	private RowReader( BufferedReader reader, String fileName ) {
+		this.reader = reader;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Open a file of rows
+	 * @param fileName The file name or "-" for stdin
+	 * @return A new RowReader
+	 */
+	public static RowReader open( String fileName ) {
+		try {
+			if ("-".equals(fileName)) {
+				return new RowReader(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), "stdin");
+			}
+			return new RowReader(new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8)), fileName);
+		} catch (IOException e) {
+			throw new SodacanException("Error opening file " + fileName, e);
+		}
+	}
+
+	/**
+	 * Read the next row
+	 * @return Array of module, variable and value, or null at the end of the file
+	 */
+	public String[] next() {
+		try {
+			while (true) {
+				String line = reader.readLine();
+				if (line==null) {
+					return null;
+				}
+				lineNumber++;
+				line = line.strip();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] row;
+				if (line.startsWith("{")) {
+					row = parseJson(line);
+				} else {
+					row = parseCsv(line);
+					if (rowCount==0 && COLUMNS[0].equalsIgnoreCase(row[0]) && COLUMNS[1].equalsIgnoreCase(row[1])) {
+						continue;
+					}
+				}
+				rowCount++;
+				return row;
+			}
+		} catch (IOException e) {
+			throw new SodacanException("Error reading " + fileName, e);
+		}
+	}
+
+	private String[] parseJson( String line ) throws IOException {
+		JsonNode node = mapper.readTree(line);
+		String[] row = new String[COLUMNS.length];
+		for (int c = 0; c < COLUMNS.length; c++) {
+			JsonNode field = node.get(COLUMNS[c]);
+			if (field==null || field.isNull()) {
+				throw error("missing " + COLUMNS[c]);
+			}
+			row[c] = field.isValueNode() ? field.asText() : field.toString();
+		}
+		return row;
+	}
+
+	private String[] parseCsv( String line ) {
+		List<String> fields = new ArrayList<>(COLUMNS.length);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c=='"') {
+					if (i + 1 < line.length() && line.charAt(i + 1)=='"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c=='"') {
+				quoted = true;
+			} else if (c==',' && fields.size() < COLUMNS.length - 1) {
+				// The value is the last column so it may contain unquoted commas
+				fields.add(field.toString().strip());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw error("unterminated quote");
+		}
+		fields.add(field.toString().strip());
+		if (fields.size()!=COLUMNS.length) {
+			throw error("expected module,variable,value");
+		}
+		return fields.toArray(new String[COLUMNS.length]);
+	}
+
+	private SodacanException error( String message ) {
+		return new SodacanException(fileName + " line " + lineNumber + ": " + message);
+	}
+
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Close the file, stdin is left open
+	 */
+	@Override
+	public void close() {
+		if ("stdin".equals(fileName)) {
+			return;
+		}
+		try {
+			reader.close();
+		} catch (IOException e) {
+		}
+	}
+}
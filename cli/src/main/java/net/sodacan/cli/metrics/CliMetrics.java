@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.metrics;
+
+import net.sodacan.cli.stats.LatencyHistogram;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * The metrics recorded by the CLI itself, kept here so that the names are in one place.
+ * @author John Churin
+ *
+ */
+public class CliMetrics {
+	public static final String COMMANDS = "sodacan_cli_commands_total";
+	public static final String COMMAND_DURATION = "sodacan_cli_command_duration_seconds";
+	public static final String RECORDS_READ = "sodacan_cli_records_read_total";
+	public static final String BYTES_READ = "sodacan_cli_read_bytes_total";
+	public static final String PUBLISHED = "sodacan_cli_published_total";
+	public static final String VIA_FOLLOW = "follow";
+	public static final String VIA_READ = "read";
+	public static final String VIA_SNAPSHOT = "snapshot";
+
+	private static final MetricsRegistry registry = MetricsRegistry.getInstance();
+	private static final Counter followRecords = readRecords(VIA_FOLLOW);
+	private static final Counter followBytes = readBytes(VIA_FOLLOW);
+	private static final Counter readRecords = readRecords(VIA_READ);
+	private static final Counter readBytes = readBytes(VIA_READ);
+
+	private static Counter readRecords( String via ) {
+		return registry.counter(RECORDS_READ, "Records read from the message bus", "via", via);
+	}
+
+	private static Counter readBytes( String via ) {
+		return registry.counter(BYTES_READ, "UTF-8 size of the keys and values read from the message bus", "via", via);
+	}
+
+	/**
+	 * Count one command
+	 * @param command Full command name, such as topic print
+	 * @param nanos How long it took
+	 * @param ok false if it failed
+	 */
+	public static void command( String command, long nanos, boolean ok ) {
+		registry.counter(COMMANDS, "Commands executed", "command", command, "result", ok ? "ok" : "error").increment();
+		LatencyHistogram histogram = registry.histogram(COMMAND_DURATION, "Time taken by commands", "command", command);
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Count a record read through a follow
+	 */
+	public static void followed( MBRecord record ) {
+		if (!record.isEOF()) {
+			followRecords.increment();
+			followBytes.add(size(record));
+		}
+	}
+
+	/**
+	 * Count a record read from start to end of a topic
+	 */
+	public static void read( MBRecord record ) {
+		if (!record.isEOF()) {
+			readRecords.increment();
+			readBytes.add(size(record));
+		}
+	}
+
+	/**
+	 * Count a record of a snapshot
+	 */
+	public static void snapshot( MBRecord record ) {
+		readRecords(VIA_SNAPSHOT).increment();
+		readBytes(VIA_SNAPSHOT).add(size(record));
+	}
+
+	/**
+	 * Count messages published
+	 * @param via SimplePublisher, MB or VariableContext
+	 * @param count Number of messages
+	 */
+	public static void published( String via, long count ) {
+		registry.counter(PUBLISHED, "Messages published", "via", via).add(count);
+	}
+
+	private static long size( MBRecord record ) {
+		return utf8Length(record.getKey()) + utf8Length(record.getValue());
+	}
+
+	/**
+	 * The encoded size of a string without encoding it
+	 */
+	public static long utf8Length( String s ) {
+		if (s==null) {
+			return 0;
+		}
+		long length = 0;
+		for (int x = 0; x < s.length(); x++) {
+			char c = s.charAt(x);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && x + 1 < s.length() && Character.isLowSurrogate(s.charAt(x + 1))) {
+				length += 4;
+				x++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Gets the metrics out of the process: to a file, written whole each time so a collector never sees
+ * half of it, or over HTTP on the loopback interface. A file ending in <code>.json</code> is written as
+ * JSON, anything else in the Prometheus text format. Over HTTP, <code>/metrics</code> is Prometheus text
+ * and <code>/metrics.json</code> is JSON.</p>
+ * @author John Churin
+ *
+ */
+public class MetricsExporter {
+	private final static Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+	private static final String PROMETHEUS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private MetricsRegistry registry;
+	private HttpServer server = null;
+
+	public MetricsExporter( MetricsRegistry registry ) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Replace the file with the current metrics
+	 * @param path
+	 */
+	public void writeFile( Path path ) {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				write(out, path.getFileName().toString().endsWith(".json"));
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new SodacanException("Unable to write metrics to " + path, e);
+		}
+	}
+
+	private void write( OutputStream out, boolean json ) throws IOException {
+		if (json) {
+			registry.writeJson(out);
+		} else {
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			registry.writePrometheus(writer);
+		}
+	}
+
+	/**
+	 * Serve metrics on a port of the loopback interface until the process ends
+	 * @param port
+	 */
+	public void serve( int port ) {
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			throw new SodacanException("Unable to serve metrics on port " + port, e);
+		}
+		server.createContext("/metrics", this::handle);
+		server.setExecutor(Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "metrics-http");
+			thread.setDaemon(true);
+			return thread;
+		}));
+		server.start();
+		logger.debug("Serving metrics on port " + port);
+	}
+
+	private void handle( HttpExchange exchange ) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			boolean json = exchange.getRequestURI().getPath().endsWith(".json");
+			exchange.getResponseHeaders().set("Content-Type", json ? "application/json" : PROMETHEUS_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				write(out, json);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	public void stop() {
+		if (server!=null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+}
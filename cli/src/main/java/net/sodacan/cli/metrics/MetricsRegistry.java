@@ -0,0 +1,219 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.stats.LatencyHistogram;
+
+/**
+ * <p>Counters and latency histograms for this process, exported in the Prometheus text format or as JSON.
+ * A metric is identified by its name and label values, asking for it again returns the same one, so callers
+ * may look metrics up each time or keep them.</p>
+ * <p>Histograms are exported as Prometheus summaries, in seconds.</p>
+ * @author John Churin
+ *
+ */
+public class MetricsRegistry {
+	private static final MetricsRegistry instance = new MetricsRegistry();
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+	private Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+	/**
+	 * All metrics sharing a name, one per set of label values
+	 */
+	private static class Family {
+		String name;
+		String help;
+		String type;
+		Map<String, Entry> metrics = new ConcurrentHashMap<>();
+		Family( String name, String help, String type ) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * One metric and the label values that pick it out of its family
+	 */
+	private static class Entry {
+		String[] labels;
+		Object metric;
+		Entry( String[] labels, Object metric ) {
+			this.labels = labels;
+			this.metric = metric;
+		}
+	}
+
+	/**
+	 * @return The registry of this process
+	 */
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get or create a counter
+	 * @param name Metric name, by convention ending in _total
+	 * @param help One line description
+	 * @param labels Label names and values, alternating
+	 * @return The counter
+	 */
+	public Counter counter( String name, String help, String... labels ) {
+		return (Counter)family(name, help, "counter").metrics.computeIfAbsent(labelString(labels), (l) -> new Entry(labels, new Counter())).metric;
+	}
+
+	/**
+	 * Get or create a latency histogram, recorded in nanoseconds
+	 * @param name Metric name, by convention ending in _seconds
+	 * @param help One line description
+	 * @param labels Label names and values, alternating
+	 * @return The histogram
+	 */
+	public LatencyHistogram histogram( String name, String help, String... labels ) {
+		return (LatencyHistogram)family(name, help, "summary").metrics.computeIfAbsent(labelString(labels), (l) -> new Entry(labels, new LatencyHistogram())).metric;
+	}
+
+	private Family family( String name, String help, String type ) {
+		Family family = families.computeIfAbsent(name, (n) -> new Family(name, help, type));
+		if (!family.type.equals(type)) {
+			throw new SodacanException("Metric " + name + " is a " + family.type + ", not a " + type);
+		}
+		return family;
+	}
+
+	/**
+	 * Labels in Prometheus form, {a="1",b="2"}, or empty when there are none
+	 */
+	private static String labelString( String... labels ) {
+		if (labels.length==0) {
+			return "";
+		}
+		if (labels.length % 2 != 0) {
+			throw new SodacanException("Metric labels must come in name, value pairs");
+		}
+		StringBuilder sb = new StringBuilder("{");
+		for (int x = 0; x < labels.length; x += 2) {
+			if (x > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[x]).append("=\"");
+			for (char c : labels[x+1].toCharArray()) {
+				if (c=='\\' || c=='"') {
+					sb.append('\\').append(c);
+				} else if (c=='\n') {
+					sb.append("\\n");
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Add a label to a label string, for quantiles
+	 */
+	private static String withLabel( String labels, String name, String value ) {
+		String label = name + "=\"" + value + "\"";
+		if (labels.isEmpty()) {
+			return "{" + label + "}";
+		}
+		return labels.substring(0, labels.length() - 1) + "," + label + "}";
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text exposition format
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writePrometheus( Writer writer ) throws IOException {
+		for (Family family : families.values()) {
+			writer.write("# HELP " + family.name + " " + family.help + "\n");
+			writer.write("# TYPE " + family.name + " " + family.type + "\n");
+			List<String> labelSets = new ArrayList<>(family.metrics.keySet());
+			labelSets.sort(null);
+			for (String labels : labelSets) {
+				Object metric = family.metrics.get(labels).metric;
+				if (metric instanceof Counter) {
+					writer.write(family.name + labels + " " + ((Counter)metric).get() + "\n");
+				} else {
+					LatencyHistogram histogram = (LatencyHistogram)metric;
+					for (double quantile : QUANTILES) {
+						writer.write(family.name + withLabel(labels, "quantile", Double.toString(quantile)) + " "
+								+ seconds(histogram.getValueAtPercentile(quantile * 100)) + "\n");
+					}
+					writer.write(family.name + "_sum" + labels + " " + seconds(histogram.getSum()) + "\n");
+					writer.write(family.name + "_count" + labels + " " + histogram.getCount() + "\n");
+				}
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Write all metrics as a JSON array of objects with name, type, labels and values
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeJson( OutputStream out ) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode root = mapper.createObjectNode();
+		root.put("timestamp", System.currentTimeMillis());
+		ArrayNode array = root.putArray("metrics");
+		for (Family family : families.values()) {
+			for (Entry entry : family.metrics.values()) {
+				ObjectNode node = array.addObject();
+				node.put("name", family.name);
+				node.put("type", family.type);
+				ObjectNode labels = node.putObject("labels");
+				for (int x = 0; x < entry.labels.length; x += 2) {
+					labels.put(entry.labels[x], entry.labels[x+1]);
+				}
+				if (entry.metric instanceof Counter) {
+					node.put("value", ((Counter)entry.metric).get());
+				} else {
+					LatencyHistogram histogram = (LatencyHistogram)entry.metric;
+					node.put("count", histogram.getCount());
+					node.put("sum", seconds(histogram.getSum()));
+					for (double quantile : QUANTILES) {
+						node.put("p" + (int)(quantile * 100), seconds(histogram.getValueAtPercentile(quantile * 100)));
+					}
+					node.put("max", seconds(histogram.getMax()));
+				}
+			}
+		}
+		mapper.writerWithDefaultPrettyPrinter().writeValue(out, root);
+	}
+
+	private static double seconds( long nanos ) {
+		return nanos / 1_000_000_000.0;
+	}
+}
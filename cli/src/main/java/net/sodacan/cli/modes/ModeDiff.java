@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.modes;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.cli.reduce.CompactKeyMap;
+import net.sodacan.cli.reduce.SpillBudget;
+import net.sodacan.cli.reduce.TopicReducer;
+import net.sodacan.cli.sort.ExternalSorter;
+import net.sodacan.messagebus.MB;
+
+/**
+ * <p>Compare the reduced state of corresponding topics in two modes, and optionally make the second match the first.</p>
+ * <p>Each side is reduced with a {@link TopicReducer} and only a 64 bit hash of each latest value is kept, in an
+ * {@link ExternalSorter} shared by both sides. The sorted output has the entries of each key next to each other,
+ * so one streaming pass finds keys only in the first mode, only in the second, or with different values. Nothing
+ * is held on the heap beyond the sorter's <code>--spill</code> budget.</p>
+ * <p>A sync then reduces the source topic once more and writes just the records of added and changed keys, and
+ * deletes the keys the source no longer has.</p>
+ * @author John Churin
+ *
+ */
+public class ModeDiff {
+	private static final char SEPARATOR = '\0';
+	private static final char FROM = 'a';
+	private static final char TO = 'b';
+	private static final long WRITE = 1;
+	private static final long DELETE = 0;
+
+	/**
+	 * What a sync would do to a key of the target
+	 */
+	public enum Change {
+		ADDED("+"), REMOVED("-"), CHANGED("~");
+
+		private final String symbol;
+
+		Change( String symbol ) {
+			this.symbol = symbol;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+	}
+
+	@FunctionalInterface
+	public interface ChangeVisitor {
+		/**
+		 * @param key The key that differs
+		 * @param change How
+		 * @return false to stop
+		 */
+		boolean visit( String key, Change change );
+	}
+
+	private MB from;
+	private String fromMode;
+	private MB to;
+	private String toMode;
+	private Supplier<SpillBudget> budgets;
+	private Supplier<ExternalSorter> sorters;
+	private Set<String> fromTopics;
+	private Set<String> toTopics;
+
+	/**
+	 * @param from The bus of the source mode
+	 * @param fromMode Name of the source mode
+	 * @param to The bus of the target mode
+	 * @param toMode Name of the target mode
+	 * @param budgets Heap allowance for each reduce
+	 * @param sorters Makes the sorter used for each topic
+	 */
+	public ModeDiff( MB from, String fromMode, MB to, String toMode, Supplier<SpillBudget> budgets, Supplier<ExternalSorter> sorters ) {
+		this.from = from;
+		this.fromMode = fromMode;
+		this.to = to;
+		this.toMode = toMode;
+		this.budgets = budgets;
+		this.sorters = sorters;
+	}
+
+	/**
+	 * Pair up the topics of the two modes. Topics that are the same topic in both, because the modes share
+	 * a bus, are left out since they cannot differ, see {@link ModeTopics#isSameBus(MB, MB)}. So is the
+	 * {@link ModeTopics#MODES} registry, which belongs to the bus rather than to either mode.
+	 * @return Map of source topic name to target topic name, in name order
+	 */
+	public Map<String, String> pairTopics() {
+		Map<String, String> topics = new TreeMap<>();
+		for (String topicName : from.listTopics()) {
+			topics.put(topicName, ModeTopics.rename(topicName, fromMode, toMode));
+		}
+		for (String topicName : to.listTopics()) {
+			String fromName = ModeTopics.rename(topicName, toMode, fromMode);
+			topics.putIfAbsent(fromName, topicName);
+		}
+		topics.entrySet().removeIf((e) -> ModeTopics.MODES.equals(e.getKey()) || ModeTopics.MODES.equals(e.getValue()));
+		if (ModeTopics.isSameBus(from, to)) {
+			topics.entrySet().removeIf((e) -> e.getKey().equals(e.getValue()));
+		}
+		return topics;
+	}
+
+	/**
+	 * Find the keys that differ between a source and a target topic
+	 * @param fromTopic
+	 * @param toTopic
+	 * @param visitor Called in key order
+	 */
+	public void diff( String fromTopic, String toTopic, ChangeVisitor visitor ) {
+		try (ExternalSorter sorter = sorters.get()) {
+			addHashes(sorter, from, fromTopic, FROM);
+			addHashes(sorter, to, toTopic, TO);
+			Group group = new Group();
+			sorter.sorted((line) -> {
+				int separator = line.lastIndexOf(SEPARATOR);
+				String key = line.substring(0, separator);
+				if (!key.equals(group.key)) {
+					if (!group.emit(visitor)) {
+						group.key = null;
+						return false;
+					}
+					group.key = key;
+				}
+				group.set(line.charAt(separator + 1), line.substring(separator + 2));
+				return true;
+			});
+			group.emit(visitor);
+		}
+	}
+
+	/**
+	 * Make the target topic match the source topic
+	 * @param fromTopic
+	 * @param toTopic
+	 * @param pipeline Writes to the target
+	 * @param visitor Also told about each change
+	 * @return The number of records written, including deletes
+	 */
+	public long sync( String fromTopic, String toTopic, KeyedPipeline pipeline, ChangeVisitor visitor ) {
+		try (CompactKeyMap changes = new CompactKeyMap(budgets.get())) {
+			long[] writes = new long[] {0};
+			diff(fromTopic, toTopic, (key, change) -> {
+				if (change==Change.REMOVED) {
+					changes.put(key, DELETE);
+				} else {
+					changes.put(key, WRITE);
+					writes[0]++;
+				}
+				return visitor.visit(key, change);
+			});
+			if (writes[0] > 0) {
+				new TopicReducer(from, fromTopic, budgets.get()).reduce((rec) -> {
+					if (changes.get(rec.getKey())==WRITE) {
+						String key = rec.getKey();
+						String value = rec.getValue();
+						pipeline.submit(toTopic + "/" + key, () -> to.produce(toTopic, key, value));
+					}
+					return true;
+				});
+			}
+			changes.forEach((key, action) -> {
+				if (action==DELETE) {
+					pipeline.submit(toTopic + "/" + key, () -> to.produce(toTopic, key, null));
+				}
+			});
+			return changes.size();
+		}
+	}
+
+	private void addHashes( ExternalSorter sorter, MB mb, String topicName, char side ) {
+		if (!topicExists(mb, topicName)) {
+			return;
+		}
+		new TopicReducer(mb, topicName, budgets.get()).reduce((rec) -> {
+			String key = rec.getKey();
+			sorter.add(key, key + SEPARATOR + side + hash(rec.getValue()));
+			return true;
+		});
+	}
+
+	private boolean topicExists( MB mb, String topicName ) {
+		if (fromTopics==null) {
+			fromTopics = new HashSet<>(from.listTopics());
+			toTopics = new HashSet<>(to.listTopics());
+		}
+		return (mb==from ? fromTopics : toTopics).contains(topicName);
+	}
+
+	/**
+	 * 64 bit FNV-1a of the value's characters. A collision could hide a change, which at this width is
+	 * not a practical concern.
+	 */
+	static String hash( String value ) {
+		long h = 0xcbf29ce484222325L;
+		for (int x = 0; x < value.length(); x++) {
+			h ^= value.charAt(x);
+			h *= 0x100000001b3L;
+		}
+		return Long.toHexString(h);
+	}
+
+	/**
+	 * The entries of one key, at most one from each side
+	 */
+	private static class Group {
+		String key = null;
+		String fromHash;
+		String toHash;
+
+		void set( char side, String hash ) {
+			if (side==FROM) {
+				fromHash = hash;
+			} else {
+				toHash = hash;
+			}
+		}
+
+		boolean emit( ChangeVisitor visitor ) {
+			if (key==null) {
+				return true;
+			}
+			Change change = null;
+			if (toHash==null) {
+				change = Change.ADDED;
+			} else if (fromHash==null) {
+				change = Change.REMOVED;
+			} else if (!fromHash.equals(toHash)) {
+				change = Change.CHANGED;
+			}
+			fromHash = null;
+			toHash = null;
+			return change==null || visitor.visit(key, change);
+		}
+	}
+}
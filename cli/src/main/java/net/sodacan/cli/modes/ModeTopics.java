@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.modes;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sodacan.SodacanException;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.mode.Mode;
+
+/**
+ * <p>How topics relate to modes. Each mode reaches its topics through its own message bus, where most
+ * topics, such as <code>modules</code> and the module state and publish topics, have the same name in every mode.
+ * Topics named for the base mode, such as <code>&lt;baseMode&gt;-tick</code>, carry the mode name as a prefix.
+ * Known modes are registered in the <code>Modes</code> topic, keyed by mode name with the base mode as value.</p>
+ * @author John Churin
+ *
+ */
+public class ModeTopics {
+	public static final String MODES = "Modes";
+	private static final String PROBE_PREFIX = "soda-probe-";
+	private static final int PROBE_TRIES = 10;
+	private static final long PROBE_WAIT_MILLIS = 100;
+	private static final long FIRST_RECORD_SECONDS = 10;
+
+	private ModeTopics() {
+	}
+
+	/**
+	 * Get a mode other than the session mode. The mode of the calling thread is set back afterwards.
+	 * @param modeName The mode wanted, it must be in the configuration
+	 * @param current The mode of the calling thread
+	 * @return The mode
+	 */
+	public static Mode forName( String modeName, Mode current ) {
+		if (modeName.equals(current.getModeName())) {
+			return current;
+		}
+		try {
+			Mode.setModeInThread(modeName);
+			Mode mode = Mode.getInstance();
+			if (mode==null) {
+				throw new SodacanException("Mode " + modeName + " is not in the configuration");
+			}
+			return mode;
+		} finally {
+			Mode.setModeInThread(current.getModeName());
+		}
+	}
+
+	/**
+	 * The name of a topic in another mode
+	 * @param topicName Name in the mode it comes from
+	 * @param from That mode
+	 * @param to The other mode
+	 * @return The name with the mode prefix replaced, if it has one, otherwise the same name
+	 */
+	public static String rename( String topicName, String from, String to ) {
+		String prefix = from + "-";
+		if (topicName.startsWith(prefix)) {
+			return to + "-" + topicName.substring(prefix.length());
+		}
+		return topicName;
+	}
+
+	/**
+	 * @param mb The bus holding the registry
+	 * @param modeName
+	 * @return The registry entry of the mode, or null if the mode is not registered
+	 */
+	public static MBRecord getRegistration( MB mb, String modeName ) {
+		Map<String, MBRecord> modes = mb.openTopic(MODES, 0).snapshot();
+		return modes.get(modeName);
+	}
+
+	/**
+	 * Add a mode to the registry
+	 * @param mb The bus holding the registry
+	 * @param modeName The new mode
+	 * @param baseModeName The mode it was made from
+	 */
+	public static void register( MB mb, String modeName, String baseModeName ) {
+		mb.produce(MODES, modeName, baseModeName);
+	}
+
+	/**
+	 * Whether two modes reach the same message bus. Modes configured against the same brokers each get an MB
+	 * of their own, so comparing them says little. Instead an empty, uniquely named topic is created through
+	 * one and looked for through the other, allowing a second for it to show up, and then deleted again.
+	 * @param a
+	 * @param b
+	 * @return true if a topic of one is the same topic in the other
+	 */
+	public static boolean isSameBus( MB a, MB b ) {
+		if (a==b) {
+			return true;
+		}
+		String probe = PROBE_PREFIX + UUID.randomUUID();
+		a.createTopic(probe, false);
+		try {
+			for (int x = 0; x < PROBE_TRIES; x++) {
+				if (b.listTopics().contains(probe)) {
+					return true;
+				}
+				Thread.sleep(PROBE_WAIT_MILLIS);
+			}
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("Interrupted while comparing message buses");
+		} finally {
+			a.deleteTopic(probe);
+		}
+	}
+
+	/**
+	 * Whether a topic has no records, going by the first thing a follow from the start sees
+	 * @param mb
+	 * @param topicName
+	 * @return true if the follow is caught up before any record, false if not, or if it can't tell in time
+	 */
+	public static boolean isEmpty( MB mb, String topicName ) {
+		CountDownLatch first = new CountDownLatch(1);
+		AtomicBoolean empty = new AtomicBoolean(false);
+		Future<?> follow = mb.openTopic(topicName, 0).follow((record) -> {
+			if (first.getCount() > 0) {
+				empty.set(record.isEOF());
+				first.countDown();
+			}
+		});
+		try {
+			return first.await(FIRST_RECORD_SECONDS, TimeUnit.SECONDS) && empty.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("Interrupted while reading topic " + topicName);
+		} finally {
+			follow.cancel(true);
+		}
+	}
+
+	/**
+	 * Whether a topic keeps only the latest record of each key. The message bus only says so in its
+	 * description of the topic.
+	 * @param mb
+	 * @param topicName
+	 * @return true if the description mentions compaction
+	 */
+	public static boolean isCompacted( MB mb, String topicName ) {
+		String description = mb.describeTopic(topicName);
+		return description!=null && description.toLowerCase(Locale.ROOT).contains("compact");
+	}
+}
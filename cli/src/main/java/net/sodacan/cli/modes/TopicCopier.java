@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.modes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sodacan.SodacanException;
+import net.sodacan.cli.TopicReader;
+import net.sodacan.cli.metrics.CliMetrics;
+import net.sodacan.cli.pipeline.KeyedPipeline;
+import net.sodacan.messagebus.MB;
+
+/**
+ * <p>Copy topics from one message bus to another. A fixed number of readers each take the next topic not yet
+ * copied and stream it from the beginning with a {@link TopicReader}. Records are handed to a {@link KeyedPipeline}
+ * which produces them to the target, in order for each key of a topic. The pipeline bounds the records in flight,
+ * so memory does not grow with the size of the topics.</p>
+ * @author John Churin
+ *
+ */
+public class TopicCopier {
+	// Records a writer takes from its queue at once
+	private static final int BATCH_SIZE = 100;
+
+	private MB from;
+	private MB to;
+	private int readers;
+	private int writers;
+	private int inflight;
+	private LongAdder records = new LongAdder();
+	private LongAdder bytes = new LongAdder();
+	private AtomicInteger topicsDone = new AtomicInteger();
+	private int topicCount = 0;
+
+	/**
+	 * @param from The bus to copy from
+	 * @param to The bus to copy to
+	 * @param readers Number of topics read at the same time
+	 * @param writers Number of threads producing to the target
+	 * @param inflight Maximum number of records read but not yet produced
+	 */
+	public TopicCopier( MB from, MB to, int readers, int writers, int inflight ) {
+		if (readers < 1) {
+			throw new SodacanException("A topic copy needs at least one reader");
+		}
+		this.from = from;
+		this.to = to;
+		this.readers = readers;
+		this.writers = writers;
+		this.inflight = inflight;
+	}
+
+	/**
+	 * Copy the topics, calling back about once per interval while the copy runs
+	 * @param topics Map of source topic name to target topic name
+	 * @param executorService Runs the readers
+	 * @param progress Called on the calling thread
+	 * @param intervalMillis Time between progress calls
+	 */
+	public void copy( Map<String, String> topics, ExecutorService executorService, Runnable progress, long intervalMillis ) {
+		topicCount = topics.size();
+		ConcurrentLinkedQueue<Map.Entry<String, String>> work = new ConcurrentLinkedQueue<>(topics.entrySet());
+		try (KeyedPipeline pipeline = new KeyedPipeline("copy", writers, inflight, BATCH_SIZE)) {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int r = 0; r < Math.min(readers, topicCount); r++) {
+				futures.add(executorService.submit(() -> read(work, pipeline)));
+			}
+			for (Future<?> future : futures) {
+				waitFor(future, progress, intervalMillis);
+			}
+			pipeline.drain();
+			if (pipeline.getErrorCount() > 0) {
+				throw new SodacanException(pipeline.getErrorCount() + " records could not be written, first error: " + pipeline.getFirstError());
+			}
+		}
+	}
+
+	private void read( ConcurrentLinkedQueue<Map.Entry<String, String>> work, KeyedPipeline pipeline ) {
+		Map.Entry<String, String> topic;
+		while ((topic = work.poll())!=null) {
+			String target = topic.getValue();
+			new TopicReader(from, topic.getKey()).read(0, (rec) -> {
+				String key = rec.getKey();
+				String value = rec.getValue();
+				pipeline.submit(target + "/" + key, () -> {
+					to.produce(target, key, value);
+					records.increment();
+					bytes.add(CliMetrics.utf8Length(key) + CliMetrics.utf8Length(value));
+				});
+				return true;
+			});
+			topicsDone.incrementAndGet();
+		}
+	}
+
+	private void waitFor( Future<?> future, Runnable progress, long intervalMillis ) {
+		while (true) {
+			try {
+				future.get(intervalMillis, TimeUnit.MILLISECONDS);
+				return;
+			} catch (TimeoutException e) {
+				progress.run();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SodacanException("Interrupted while copying topics", e);
+			} catch (ExecutionException e) {
+				throw new SodacanException("Topic copy failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * @return Records written to the target so far
+	 */
+	public long getRecords() {
+		return records.sum();
+	}
+
+	/**
+	 * @return Key and value bytes written to the target so far
+	 */
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * @return Topics completely read so far
+	 */
+	public int getTopicsDone() {
+		return topicsDone.get();
+	}
+
+	public int getTopicCount() {
+		return topicCount;
+	}
+}
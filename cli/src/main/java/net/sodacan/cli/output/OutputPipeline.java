@@ -0,0 +1,300 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.output;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>A bounded buffer between whatever produces output, typically a follow callback on a consumer thread,
+ * and a print stream. Items are formatted and written by a drain task, never by the producer, and each
+ * batch is written with a single call so lines from different pipelines never interleave.</p>
+ * <p>When the buffer is full the overflow policy decides what happens: block the producer, drop the
+ * oldest item, or sample. Anything not written is counted as dropped.</p>
+ * <p>No thread is dedicated to a pipeline. A drain task is handed to the executor when items arrive and
+ * none is running, and it runs until the buffer is empty.</p>
+ * <p>If formatting or writing fails the pipeline stops: what is buffered and anything offered later is
+ * counted as dropped, and the failure is thrown from {@link #flush()} and {@link #close()}.</p>
+ * @author John Churin
+ *
+ * @param <T> The type of item
+ */
+public class OutputPipeline<T> implements Consumer<T>, Closeable {
+	// Of the items offered while the buffer is more than half full, SAMPLE keeps one in this many
+	public static final int SAMPLE_EVERY = 16;
+	private static final int BATCH_SIZE = 256;
+
+	public enum Overflow {
+		BLOCK, DROP, SAMPLE;
+
+		public static Overflow parse( String name ) {
+			for (Overflow overflow : values()) {
+				if (overflow.name().equalsIgnoreCase(name)) {
+					return overflow;
+				}
+			}
+			throw new SodacanException("Unknown overflow policy " + name + ", use block, drop or sample");
+		}
+	}
+
+	/**
+	 * Formats an item into the batch being written, without an intermediate String
+	 */
+	public interface LineFormatter<T> {
+		public void format( T item, StringBuilder sb );
+	}
+
+	private PrintStream out;
+	private LineFormatter<T> formatter;
+	private Overflow overflow;
+	private Executor executor;
+	private Object[] ring;
+	private int head = 0;
+	private int count = 0;
+	private boolean draining = false;
+	private boolean closed = false;
+	private long sampleCounter = 0;
+	private long dropped = 0;
+	private long written = 0;
+	private RuntimeException failure = null;
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition notFull = lock.newCondition();
+	private Condition idle = lock.newCondition();
+	private Runnable drainTask = this::drain;
+
+	/**
+	 * @param out Where output goes
+	 * @param formatter Turns an item into a line, the line separator is added here
+	 * @param capacity Number of items that may be waiting to be written
+	 * @param overflow What to do when the buffer is full
+	 * @param executor Runs the drain task
+	 */
+	public OutputPipeline( PrintStream out, LineFormatter<T> formatter, int capacity, Overflow overflow, Executor executor ) {
+		if (capacity < 1) {
+			throw new SodacanException("Output buffer must hold at least one line");
+		}
+		this.out = out;
+		this.formatter = formatter;
+		this.ring = new Object[capacity];
+		this.overflow = overflow;
+		this.executor = executor;
+	}
+
+	/**
+	 * Offer an item for output, which may block, or be dropped, depending on the overflow policy
+	 */
+	@Override
+	public void accept( T item ) {
+		boolean startDrain = false;
+		lock.lock();
+		try {
+			if (closed || failure!=null) {
+				dropped++;
+				return;
+			}
+			if (overflow==Overflow.SAMPLE && count > ring.length / 2 && (sampleCounter++ % SAMPLE_EVERY)!=0) {
+				dropped++;
+				return;
+			}
+			while (count==ring.length) {
+				if (overflow==Overflow.BLOCK) {
+					notFull.awaitUninterruptibly();
+					if (failure!=null) {
+						dropped++;
+						return;
+					}
+				} else {
+					// Make room by dropping the oldest
+					ring[head] = null;
+					head = (head + 1) % ring.length;
+					count--;
+					dropped++;
+				}
+			}
+			ring[(head + count) % ring.length] = item;
+			count++;
+			if (!draining) {
+				draining = true;
+				startDrain = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (startDrain) {
+			try {
+				executor.execute(drainTask);
+			} catch (RuntimeException e) {
+				stopped(e, 0);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Write everything buffered, a batch at a time, then stop until more arrives
+	 */
+	@SuppressWarnings("unchecked")
+	private void drain() {
+		StringBuilder sb = new StringBuilder();
+		Object[] batch = new Object[Math.min(BATCH_SIZE, ring.length)];
+		int size = 0;
+		boolean finished = false;
+		RuntimeException error = null;
+		try {
+			while (true) {
+				lock.lock();
+				try {
+					while (size < batch.length && count > 0) {
+						batch[size++] = ring[head];
+						ring[head] = null;
+						head = (head + 1) % ring.length;
+						count--;
+					}
+					if (size==0) {
+						// Cleared under the same lock a producer checks, so no item is left without a drain
+						draining = false;
+						finished = true;
+						idle.signalAll();
+						return;
+					}
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				sb.setLength(0);
+				for (int x = 0; x < size; x++) {
+					formatter.format((T)batch[x], sb);
+					sb.append(System.lineSeparator());
+					batch[x] = null;
+				}
+				out.print(sb);
+				if (out.checkError()) {
+					throw new SodacanException("Error writing output");
+				}
+				lock.lock();
+				try {
+					written += size;
+					size = 0;
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			if (!finished) {
+				stopped(error==null ? new SodacanException("Output stopped unexpectedly") : error, size);
+			}
+		}
+	}
+
+	/**
+	 * The drain failed, or could not be started. Drop what is left, remember why and release anyone waiting.
+	 * @param error The cause, reported by flush
+	 * @param lost Items taken from the buffer but not written
+	 */
+	private void stopped( RuntimeException error, int lost ) {
+		lock.lock();
+		try {
+			if (failure==null) {
+				failure = error;
+			}
+			dropped += lost + count;
+			for (int x = 0; x < count; x++) {
+				ring[(head + x) % ring.length] = null;
+			}
+			count = 0;
+			draining = false;
+			idle.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until everything offered so far has been written
+	 * @throws SodacanException if writing failed, after which nothing more is written
+	 */
+	public void flush() {
+		lock.lock();
+		try {
+			while (draining) {
+				idle.awaitUninterruptibly();
+			}
+			if (failure!=null) {
+				throw new SodacanException("Output failed, " + dropped + " lines not written: " + failure.getMessage(), failure);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Number of items not written because of the overflow policy, or offered after close
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Number of items written so far
+	 */
+	public long getWritten() {
+		lock.lock();
+		try {
+			return written;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Number of items waiting to be written
+	 */
+	public int getPending() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write what is buffered and accept nothing more
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+		flush();
+	}
+}
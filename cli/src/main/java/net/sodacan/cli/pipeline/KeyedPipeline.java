@@ -0,0 +1,174 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.pipeline;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Run tasks on a fixed set of worker threads with a bound on the number of tasks in flight.
+ * Tasks submitted with the same key always run on the same worker, in the order they were submitted,
+ * while tasks with different keys run concurrently. Each worker takes whatever has queued up, up to
+ * the batch size, in one go which keeps hand-off costs down when the submitter is faster than the workers.</p>
+ * <p>A failed task is counted and logged, it does not stop the pipeline.</p>
+ * @author John Churin
+ *
+ */
+public class KeyedPipeline implements Closeable {
+	private final static Logger logger = LoggerFactory.getLogger(KeyedPipeline.class);
+	private static final Runnable STOP = () -> {};
+
+	private List<BlockingQueue<Runnable>> queues = new ArrayList<>();
+	private List<Thread> threads = new ArrayList<>();
+	private Semaphore inflight;
+	private int batchSize;
+	private long outstanding = 0;
+	private long errorCount = 0;
+	private Throwable firstError = null;
+	private boolean closed = false;
+
+	/**
+	 * Start the workers
+	 * @param name Used to name the worker threads
+	 * @param workers Number of worker threads
+	 * @param maxInflight Maximum number of tasks submitted but not yet complete
+	 * @param batchSize Maximum number of tasks a worker takes from its queue at once
+	 */
+	public KeyedPipeline( String name, int workers, int maxInflight, int batchSize ) {
+		if (workers < 1 || maxInflight < 1 || batchSize < 1) {
+			throw new SodacanException("Pipeline " + name + " needs at least one worker, one task in flight and a batch of one");
+		}
+		this.inflight = new Semaphore(maxInflight);
+		this.batchSize = batchSize;
+		for (int w = 0; w < workers; w++) {
+			BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+			queues.add(queue);
+			Thread thread = new Thread(() -> work(queue), name + "-" + w);
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+	}
+
+	private void work( BlockingQueue<Runnable> queue ) {
+		List<Runnable> batch = new ArrayList<>(batchSize);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+				for (Runnable task : batch) {
+					if (task==STOP) {
+						return;
+					}
+					try {
+						task.run();
+					} catch (Throwable e) {
+						failed(e);
+					} finally {
+						inflight.release();
+						completed();
+					}
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void failed( Throwable e ) {
+		errorCount++;
+		if (firstError==null) {
+			firstError = e;
+			logger.warn("Pipeline task failed: " + e);
+		}
+	}
+
+	private synchronized void completed() {
+		outstanding--;
+		if (outstanding==0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Queue a task, waiting if the maximum number of tasks are already in flight
+	 * @param key Tasks with equal keys run in submission order
+	 * @param task The work to do
+	 */
+	public void submit( String key, Runnable task ) {
+		try {
+			inflight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("Interrupted while submitting to pipeline", e);
+		}
+		synchronized (this) {
+			if (closed) {
+				inflight.release();
+				throw new SodacanException("Pipeline is closed");
+			}
+			outstanding++;
+		}
+		int worker = Math.floorMod(key.hashCode(), queues.size());
+		queues.get(worker).add(task);
+	}
+
+	/**
+	 * Wait until every submitted task has completed
+	 */
+	public synchronized void drain() {
+		try {
+			while (outstanding > 0) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SodacanException("Interrupted while draining pipeline", e);
+		}
+	}
+
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	public synchronized Throwable getFirstError() {
+		return firstError;
+	}
+
+	/**
+	 * Complete any outstanding tasks and stop the workers
+	 */
+	@Override
+	public void close() {
+		drain();
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+		}
+		for (BlockingQueue<Runnable> queue : queues) {
+			queue.add(STOP);
+		}
+	}
+}
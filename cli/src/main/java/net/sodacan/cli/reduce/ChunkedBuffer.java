@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>A byte store addressed by a long position and made up of fixed-size chunks. Chunks live on the heap
+ * while the SpillBudget allows it, after that they are memory-mapped from a spill file so the operating
+ * system, rather than the Java heap, holds the data.</p>
+ * <p>Longs must be stored at positions that are a multiple of eight and ints at a multiple of four so that
+ * they never straddle two chunks. Byte arrays may be stored anywhere.</p>
+ * @author John Churin
+ *
+ */
+public class ChunkedBuffer implements Closeable {
+	private int chunkBits;
+	private int chunkSize;
+	private long chunkMask;
+	private SpillBudget budget;
+	private List<ByteBuffer> chunks = new ArrayList<>();
+	private long heapBytes = 0;
+	private Path spillFile = null;
+	private FileChannel spillChannel = null;
+	private long spillBytes = 0;
+
+	/**
+	 * Create an empty buffer
+	 * @param chunkBits Log2 of the chunk size, at least 3
+	 * @param budget The heap budget this buffer draws from
+	 */
+	public ChunkedBuffer( int chunkBits, SpillBudget budget) {
+		if (chunkBits < 3 || chunkBits > 30) {
+			throw new SodacanException("Invalid chunk size: 2^" + chunkBits);
+		}
+		this.chunkBits = chunkBits;
+		this.chunkSize = 1 << chunkBits;
+		this.chunkMask = chunkSize - 1;
+		this.budget = budget;
+	}
+
+	/**
+	 * @return The number of bytes currently addressable
+	 */
+	public long capacity() {
+		return ((long)chunks.size()) << chunkBits;
+	}
+
+	/**
+	 * Make sure that positions up to, but not including, size are addressable. New space is zero-filled.
+	 * @param size Minimum capacity
+	 */
+	public void ensureCapacity( long size ) {
+		while (capacity() < size) {
+			addChunk();
+		}
+	}
+
+	private void addChunk() {
+		if (budget.reserveHeap(chunkSize)) {
+			chunks.add(ByteBuffer.allocate(chunkSize));
+			heapBytes += chunkSize;
+			return;
+		}
+		try {
+			if (spillChannel==null) {
+				spillFile = budget.createSpillFile();
+				spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			chunks.add(spillChannel.map(FileChannel.MapMode.READ_WRITE, spillBytes, chunkSize));
+			spillBytes += chunkSize;
+			budget.addSpilled(chunkSize);
+		} catch (IOException e) {
+			throw new SodacanException("Unable to extend spill file " + spillFile, e);
+		}
+	}
+
+	private ByteBuffer chunk( long position ) {
+		return chunks.get((int)(position >>> chunkBits));
+	}
+
+	private int offset( long position ) {
+		return (int)(position & chunkMask);
+	}
+
+	public long getLong( long position ) {
+		return chunk(position).getLong(offset(position));
+	}
+
+	public void putLong( long position, long value ) {
+		chunk(position).putLong(offset(position), value);
+	}
+
+	public int getInt( long position ) {
+		return chunk(position).getInt(offset(position));
+	}
+
+	public void putInt( long position, int value ) {
+		chunk(position).putInt(offset(position), value);
+	}
+
+	/**
+	 * Copy bytes out of the buffer
+	 * @param position Where to start
+	 * @param dst Destination, filled completely
+	 */
+	public void get( long position, byte[] dst ) {
+		int done = 0;
+		while (done < dst.length) {
+			ByteBuffer chunk = chunk(position + done);
+			int offset = offset(position + done);
+			int length = Math.min(dst.length - done, chunkSize - offset);
+			chunk.duplicate().position(offset).get(dst, done, length);
+			done += length;
+		}
+	}
+
+	/**
+	 * Copy bytes into the buffer, the space must already be available
+	 * @param position Where to start
+	 * @param src The bytes to store
+	 */
+	public void put( long position, byte[] src ) {
+		int done = 0;
+		while (done < src.length) {
+			ByteBuffer chunk = chunk(position + done);
+			int offset = offset(position + done);
+			int length = Math.min(src.length - done, chunkSize - offset);
+			chunk.duplicate().position(offset).put(src, done, length);
+			done += length;
+		}
+	}
+
+	/**
+	 * Compare a range of the buffer with a byte array
+	 * @param position Where to start
+	 * @param other What to compare with
+	 * @return true if the bytes are the same
+	 */
+	public boolean equalsAt( long position, byte[] other ) {
+		for (int i = 0; i < other.length; i++) {
+			long p = position + i;
+			if (chunk(p).get(offset(p)) != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Give back the heap and remove the spill file, if any. Mapped chunks are released when they are garbage collected.
+	 */
+	@Override
+	public void close() {
+		chunks.clear();
+		budget.releaseHeap(heapBytes);
+		heapBytes = 0;
+		if (spillChannel!=null) {
+			try {
+				spillChannel.close();
+				Files.deleteIfExists(spillFile);
+			} catch (IOException e) {
+				// Nothing useful to do, deleteOnExit will try again
+			}
+			spillChannel = null;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>A map from String keys to long values that does not keep a Java object per entry.
+ * The slot table uses open addressing with linear probing and each slot holds a reference to the key,
+ * the value and the key's hash. Key bytes are appended to a separate arena. Both the table and the arena
+ * are ChunkedBuffers so, once the SpillBudget is used up, they continue in memory-mapped spill files.</p>
+ * <p>Entries cannot be removed. This map is used for reducing topics where a deleted key is simply a key
+ * whose latest record has no value.</p>
+ * @author John Churin
+ *
+ */
+public class CompactKeyMap implements Closeable {
+	public static final long NO_VALUE = Long.MIN_VALUE;
+	// Slot layout: keyRef+1 (zero means empty), value, hash, padding
+	private static final int SLOT_SIZE = 24;
+	private static final int TABLE_CHUNK_BITS = 24;
+	private static final int ARENA_CHUNK_BITS = 20;
+	private static final double LOAD_FACTOR = 0.6;
+
+	private SpillBudget budget;
+	private ChunkedBuffer table;
+	private ChunkedBuffer arena;
+	private long slots;
+	private long size = 0;
+	private long arenaEnd = 0;
+
+	/**
+	 * A callback for each entry in the map
+	 */
+	@FunctionalInterface
+	public interface EntryVisitor {
+		void visit( String key, long value );
+	}
+
+	public CompactKeyMap( SpillBudget budget ) {
+		this.budget = budget;
+		this.slots = 1024;
+		this.table = newTable(slots);
+		this.arena = new ChunkedBuffer(ARENA_CHUNK_BITS, budget);
+	}
+
+	private ChunkedBuffer newTable( long slotCount ) {
+		long bytes = slotCount * SLOT_SIZE;
+		// Small tables get a single chunk of just the right size
+		int bits = Math.min(TABLE_CHUNK_BITS, 64 - Long.numberOfLeadingZeros(bytes - 1));
+		ChunkedBuffer buffer = new ChunkedBuffer(bits, budget);
+		buffer.ensureCapacity(bytes);
+		return buffer;
+	}
+
+	private static int hash( String key ) {
+		// Spread the bits of String.hashCode so that linear probing doesn't cluster
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private long findSlot( String key, byte[] keyBytes, int hash ) {
+		long mask = slots - 1;
+		long slot = hash & mask;
+		while (true) {
+			long position = slot * SLOT_SIZE;
+			long keyRef = table.getLong(position);
+			if (keyRef==0) {
+				return slot;
+			}
+			if (table.getInt(position + 16)==hash && keyEquals(keyRef - 1, keyBytes)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean keyEquals( long keyRef, byte[] keyBytes ) {
+		return arena.getInt(keyRef)==keyBytes.length && arena.equalsAt(keyRef + 4, keyBytes);
+	}
+
+	/**
+	 * Set the value for a key, replacing any previous value
+	 * @param key
+	 * @param value Any value other than NO_VALUE
+	 * @return The previous value or NO_VALUE
+	 */
+	public long put( String key, long value ) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(key);
+		long position = findSlot(key, keyBytes, hash) * SLOT_SIZE;
+		long keyRef = table.getLong(position);
+		if (keyRef!=0) {
+			long previous = table.getLong(position + 8);
+			table.putLong(position + 8, value);
+			return previous;
+		}
+		table.putLong(position, appendKey(keyBytes) + 1);
+		table.putLong(position + 8, value);
+		table.putInt(position + 16, hash);
+		size++;
+		if (size > slots * LOAD_FACTOR) {
+			grow();
+		}
+		return NO_VALUE;
+	}
+
+	/**
+	 * Get the value for a key
+	 * @param key
+	 * @return The value or NO_VALUE if the key is not in the map
+	 */
+	public long get( String key ) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		long position = findSlot(key, keyBytes, hash(key)) * SLOT_SIZE;
+		if (table.getLong(position)==0) {
+			return NO_VALUE;
+		}
+		return table.getLong(position + 8);
+	}
+
+	private long appendKey( byte[] keyBytes ) {
+		long keyRef = arenaEnd;
+		arena.ensureCapacity(keyRef + 4 + keyBytes.length);
+		arena.putInt(keyRef, keyBytes.length);
+		arena.put(keyRef + 4, keyBytes);
+		// Keep the length fields aligned
+		arenaEnd = (keyRef + 4 + keyBytes.length + 3) & ~3L;
+		return keyRef;
+	}
+
+	private String readKey( long keyRef ) {
+		byte[] keyBytes = new byte[arena.getInt(keyRef)];
+		arena.get(keyRef + 4, keyBytes);
+		return new String(keyBytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Double the size of the table. The stored hash means that keys don't need to be read back.
+	 */
+	private void grow() {
+		long newSlots = slots * 2;
+		long mask = newSlots - 1;
+		ChunkedBuffer newTable = newTable(newSlots);
+		for (long s = 0; s < slots; s++) {
+			long position = s * SLOT_SIZE;
+			long keyRef = table.getLong(position);
+			if (keyRef==0) continue;
+			int hash = table.getInt(position + 16);
+			long slot = hash & mask;
+			while (newTable.getLong(slot * SLOT_SIZE)!=0) {
+				slot = (slot + 1) & mask;
+			}
+			long newPosition = slot * SLOT_SIZE;
+			newTable.putLong(newPosition, keyRef);
+			newTable.putLong(newPosition + 8, table.getLong(position + 8));
+			newTable.putInt(newPosition + 16, hash);
+		}
+		table.close();
+		table = newTable;
+		slots = newSlots;
+	}
+
+	/**
+	 * Visit each entry, in no particular order
+	 * @param visitor
+	 */
+	public void forEach( EntryVisitor visitor ) {
+		for (long s = 0; s < slots; s++) {
+			long position = s * SLOT_SIZE;
+			long keyRef = table.getLong(position);
+			if (keyRef!=0) {
+				visitor.visit(readKey(keyRef - 1), table.getLong(position + 8));
+			}
+		}
+	}
+
+	/**
+	 * Find the smallest value in the map without reading any keys
+	 * @return The smallest value or NO_VALUE if the map is empty
+	 */
+	public long minValue() {
+		long min = NO_VALUE;
+		for (long s = 0; s < slots; s++) {
+			long position = s * SLOT_SIZE;
+			if (table.getLong(position)!=0) {
+				long value = table.getLong(position + 8);
+				if (min==NO_VALUE || value < min) {
+					min = value;
+				}
+			}
+		}
+		return min;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void close() {
+		table.close();
+		arena.close();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>The amount of heap that a group of ChunkedBuffers may use between them. Once the threshold is crossed,
+ * new chunks are memory-mapped from temporary spill files instead.</p>
+ * @author John Churin
+ *
+ */
+public class SpillBudget {
+	private long heapLimit;
+	private long heapUsed = 0;
+	private long spilled = 0;
+	private Path spillDirectory;
+
+	/**
+	 * Create a budget with spill files in the default temporary directory
+	 * @param heapLimit The number of bytes that may be kept on the heap
+	 */
+	public SpillBudget( long heapLimit ) {
+		this(heapLimit, new File(System.getProperty("java.io.tmpdir")).toPath());
+	}
+
+	public SpillBudget( long heapLimit, Path spillDirectory ) {
+		this.heapLimit = heapLimit;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Reserve heap space for a new chunk if the budget allows it
+	 * @param bytes Size of the chunk
+	 * @return true if the chunk may go on the heap, false if it must be spilled
+	 */
+	synchronized boolean reserveHeap( long bytes ) {
+		if (heapUsed + bytes > heapLimit) {
+			return false;
+		}
+		heapUsed += bytes;
+		return true;
+	}
+
+	synchronized void releaseHeap( long bytes ) {
+		heapUsed -= bytes;
+	}
+
+	synchronized void addSpilled( long bytes ) {
+		spilled += bytes;
+	}
+
+	/**
+	 * Create a new spill file. The caller is responsible for deleting it.
+	 * @return The path of the new, empty, file
+	 */
+	Path createSpillFile() {
+		try {
+			Path path = Files.createTempFile(spillDirectory, "soda-spill-", ".tmp");
+			path.toFile().deleteOnExit();
+			return path;
+		} catch (IOException e) {
+			throw new SodacanException("Unable to create spill file in " + spillDirectory, e);
+		}
+	}
+
+	public synchronized long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/**
+	 * @return The total number of bytes that have been written to spill files
+	 */
+	public synchronized long getSpilled() {
+		return spilled;
+	}
+}
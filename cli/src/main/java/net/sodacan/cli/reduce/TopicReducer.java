@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import java.util.function.Predicate;
+
+import net.sodacan.cli.TopicReader;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * <p>Reduce a topic to the most recent record for each key without holding the records themselves.</p>
+ * <p>The first pass streams the topic and keeps only key to latest-offset in a CompactKeyMap. The second pass
+ * streams the topic again, between the lowest and highest winning offsets, and hands just the winning records
+ * to the visitor. Records are delivered in offset order. A key whose latest record has no value has been
+ * deleted and is skipped.</p>
+ * @author John Churin
+ *
+ */
+public class TopicReducer {
+	private MB mb;
+	private String topicName;
+	private SpillBudget budget;
+
+	/**
+	 * @param mb The message bus
+	 * @param topicName The topic to reduce
+	 * @param budget Heap allowed for the key map before it spills to disk
+	 */
+	public TopicReducer( MB mb, String topicName, SpillBudget budget ) {
+		this.mb = mb;
+		this.topicName = topicName;
+		this.budget = budget;
+	}
+
+	/**
+	 * Reduce the topic
+	 * @param visitor Called with each winning record, returns false to stop
+	 * @return The number of distinct keys in the topic, including deleted keys
+	 */
+	public long reduce( Predicate<MBRecord> visitor ) {
+		try (CompactKeyMap latest = new CompactKeyMap(budget)) {
+			long[] last = new long[] {-1};
+			TopicReader reader = new TopicReader(mb, topicName);
+			reader.read(0, (rec) -> {
+				latest.put(rec.getKey(), rec.getOffset());
+				last[0] = rec.getOffset();
+				return true;
+			});
+			if (last[0] < 0) {
+				return 0;
+			}
+			// The last record read is always a winner so the second pass ends there
+			reader.read(latest.minValue(), (rec) -> {
+				if (rec.getValue()!=null && latest.get(rec.getKey())==rec.getOffset()) {
+					if (!visitor.test(rec)) {
+						return false;
+					}
+				}
+				return rec.getOffset() < last[0];
+			});
+			return latest.size();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.sodacan.SodacanException;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * <p>Read a segment file written by {@link SegmentWriter}. Each block is memory-mapped where it lies, found
+ * through the index at the end of the file, so the file is never copied through a stream buffer and only
+ * the block being read needs to be resident.</p>
+ * @author John Churin
+ *
+ */
+public class SegmentReader implements Closeable {
+	private Path path;
+	private FileChannel channel;
+	private String topicName;
+	private boolean compressed;
+	private long[][] index;
+	private long recordCount;
+	private long indexPosition;
+
+	/**
+	 * Open a segment file and read its header and index
+	 * @param path
+	 */
+	public SegmentReader( Path path ) {
+		this.path = path;
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			readHeader();
+			readIndex();
+		} catch (IOException | BufferUnderflowException e) {
+			close();
+			throw new SodacanException(path + " is not a readable segment file", e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		long size = channel.size();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 64 * 1024));
+		checkMagic(header, SegmentWriter.MAGIC);
+		compressed = (header.getInt() & SegmentWriter.FLAG_COMPRESSED)!=0;
+		topicName = readString(header);
+	}
+
+	private void readIndex() throws IOException {
+		long size = channel.size();
+		if (size < SegmentWriter.TRAILER_SIZE) {
+			throw new SodacanException(path + " has no index, it may be truncated");
+		}
+		MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - SegmentWriter.TRAILER_SIZE, SegmentWriter.TRAILER_SIZE);
+		indexPosition = trailer.getLong();
+		int blocks = trailer.getInt();
+		recordCount = trailer.getLong();
+		checkMagic(trailer, SegmentWriter.INDEX_MAGIC);
+		long indexSize = (long)blocks * SegmentWriter.INDEX_ENTRY_SIZE;
+		if (blocks < 0 || indexPosition < 0 || indexPosition + indexSize != size - SegmentWriter.TRAILER_SIZE) {
+			throw new SodacanException(path + " has a damaged index");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, indexSize);
+		index = new long[blocks][];
+		for (int b = 0; b < blocks; b++) {
+			index[b] = new long[] {buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt()};
+		}
+	}
+
+	private void checkMagic( ByteBuffer buffer, byte[] magic ) {
+		byte[] found = new byte[magic.length];
+		buffer.get(found);
+		if (!Arrays.equals(found, magic)) {
+			throw new SodacanException(path + " is not a segment file");
+		}
+	}
+
+	private static String readString( ByteBuffer buffer ) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (!buffer.hasArray()) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+
+	/**
+	 * Visit every record in the order written
+	 * @param visitor Returns true to keep reading, false to stop
+	 * @return The number of records accepted by the visitor
+	 */
+	public long read( Predicate<MBRecord> visitor ) {
+		long count = 0;
+		Inflater inflater = compressed ? new Inflater() : null;
+		try {
+			for (int b = 0; b < index.length; b++) {
+				long[] entry = index[b];
+				long end = (b + 1 < index.length) ? index[b + 1][2] : indexPosition;
+				ByteBuffer records = readBlock(entry, end, inflater);
+				for (long r = 0; r < entry[3]; r++) {
+					long offset = records.getLong();
+					long timestamp = records.getLong();
+					String key = readString(records);
+					String value = readString(records);
+					if (!visitor.test(new SegmentRecord(topicName, timestamp, offset, key, value))) {
+						return count;
+					}
+					count++;
+				}
+			}
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | DataFormatException e) {
+			throw new SodacanException(path + " is damaged after " + count + " records", e);
+		} finally {
+			if (inflater!=null) {
+				inflater.end();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Map one block and return its records, inflated onto the heap if need be
+	 */
+	private ByteBuffer readBlock( long[] entry, long end, Inflater inflater ) throws IOException, DataFormatException {
+		MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, entry[2], end - entry[2]);
+		int count = block.getInt();
+		int rawLength = block.getInt();
+		int storedLength = block.getInt();
+		if (count!=entry[3] || rawLength < 0 || storedLength!=block.remaining()) {
+			throw new DataFormatException("block at " + entry[2] + " does not match the index");
+		}
+		ByteBuffer stored = block.slice();
+		if (inflater==null) {
+			// Records are read straight from the mapping
+			if (storedLength!=rawLength) {
+				throw new DataFormatException("block at " + entry[2] + " has the wrong length");
+			}
+			return stored;
+		}
+		byte[] raw = new byte[rawLength];
+		inflater.reset();
+		inflater.setInput(stored);
+		int length = 0;
+		while (length < rawLength && !inflater.finished()) {
+			int n = inflater.inflate(raw, length, rawLength - length);
+			if (n==0 && (inflater.needsInput() || inflater.needsDictionary())) {
+				break;
+			}
+			length += n;
+		}
+		if (length!=rawLength) {
+			throw new DataFormatException("block at " + entry[2] + " is short");
+		}
+		return ByteBuffer.wrap(raw);
+	}
+
+	/**
+	 * @return The topic the file was exported from
+	 */
+	public String getTopicName() {
+		return topicName;
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	public int getBlockCount() {
+		return index.length;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (channel!=null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// Read only, nothing is lost
+		}
+	}
+}
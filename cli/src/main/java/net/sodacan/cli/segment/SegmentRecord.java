@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.segment;
+
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * A record read back from a segment file
+ * @author John Churin
+ *
+ */
+public class SegmentRecord implements MBRecord {
+	private String topic;
+	private long timestamp;
+	private long offset;
+	private String key;
+	private String value;
+
+	public SegmentRecord( String topic, long timestamp, long offset, String key, String value ) {
+		this.topic = topic;
+		this.timestamp = timestamp;
+		this.offset = offset;
+		this.key = key;
+		this.value = value;
+	}
+
+	/**
+	 * @return The topic the record was exported from
+	 */
+	@Override
+	public String getTopic() {
+		return topic;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return The offset of the record in the topic it was exported from
+	 */
+	@Override
+	public long getOffset() {
+		return offset;
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public boolean isEOF() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "SegmentRecord [topic=" + topic + ", offset=" + offset + ", key=" + key + ", value=" + value + "]";
+	}
+}
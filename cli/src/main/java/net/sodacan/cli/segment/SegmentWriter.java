@@ -0,0 +1,234 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.segment;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import net.sodacan.SodacanException;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * <p>Write the records of a topic to a segment file. The layout, all numbers big-endian, is:</p>
+ * <pre>
+ * header:  magic "SODASEG1", flags int, topic string
+ * block:   record count int, raw length int, stored length int, stored bytes
+ * index:   for each block: first offset long, last offset long, position long, record count int
+ * trailer: index position long, block count int, record count long, magic "SODAIDX1"
+ * </pre>
+ * <p>The records of a block are offset long, timestamp long, key string, value string, where a string is a
+ * length int, -1 for null, then UTF-8 bytes. With the compressed flag the records of each block are deflated.
+ * The index at the end lets a reader find any block without reading those before it.</p>
+ * <p>The file is written next to its final name and moved into place on close, so a failed export never leaves
+ * a partial file behind.</p>
+ * @author John Churin
+ *
+ */
+public class SegmentWriter implements Closeable {
+	static final byte[] MAGIC = "SODASEG1".getBytes(StandardCharsets.US_ASCII);
+	static final byte[] INDEX_MAGIC = "SODAIDX1".getBytes(StandardCharsets.US_ASCII);
+	static final int FLAG_COMPRESSED = 1;
+	static final int TRAILER_SIZE = 8 + 4 + 8 + 8;
+	static final int INDEX_ENTRY_SIZE = 8 + 8 + 8 + 4;
+	// A block is written once its records take this much space before compression
+	private static final int BLOCK_BYTES = 1024 * 1024;
+	private static final int IO_BUFFER = 64 * 1024;
+
+	private Path path;
+	private Path temp;
+	private boolean compressed;
+	private DataOutputStream out;
+	private long position;
+	private ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(BLOCK_BYTES + BLOCK_BYTES / 8);
+	private DataOutputStream block = new DataOutputStream(blockBytes);
+	private int blockCount = 0;
+	private long blockFirstOffset;
+	private long blockLastOffset;
+	private List<long[]> index = new ArrayList<>();
+	private long recordCount = 0;
+	private Deflater deflater;
+	private boolean closed = false;
+
+	/**
+	 * Start a segment file
+	 * @param path The file to write
+	 * @param topicName The topic being exported, recorded in the header
+	 * @param compressed Deflate each block
+	 */
+	public SegmentWriter( Path path, String topicName, boolean compressed ) {
+		this.path = path;
+		this.compressed = compressed;
+		if (compressed) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		try {
+			Path parent = path.toAbsolutePath().getParent();
+			temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), IO_BUFFER));
+			out.write(MAGIC);
+			out.writeInt(compressed ? FLAG_COMPRESSED : 0);
+			byte[] topic = topicName.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(topic.length);
+			out.write(topic);
+			position = MAGIC.length + 4 + 4 + topic.length;
+		} catch (IOException e) {
+			throw new SodacanException("Unable to create " + path, e);
+		}
+	}
+
+	/**
+	 * Add a record
+	 * @param record
+	 */
+	public void write( MBRecord record ) {
+		try {
+			if (blockCount==0) {
+				blockFirstOffset = record.getOffset();
+				blockLastOffset = record.getOffset();
+			}
+			blockFirstOffset = Math.min(blockFirstOffset, record.getOffset());
+			blockLastOffset = Math.max(blockLastOffset, record.getOffset());
+			block.writeLong(record.getOffset());
+			block.writeLong(record.getTimestamp());
+			writeString(block, record.getKey());
+			writeString(block, record.getValue());
+			blockCount++;
+			recordCount++;
+			if (blockBytes.size() >= BLOCK_BYTES) {
+				writeBlock();
+			}
+		} catch (IOException e) {
+			throw new SodacanException("Unable to write " + path, e);
+		}
+	}
+
+	static void writeString( DataOutputStream out, String s ) throws IOException {
+		if (s==null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeBlock() throws IOException {
+		byte[] raw = blockBytes.toByteArray();
+		byte[] stored = raw;
+		int storedLength = raw.length;
+		if (compressed) {
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+			stored = new byte[raw.length + raw.length / 1000 + 64];
+			storedLength = 0;
+			while (!deflater.finished()) {
+				if (storedLength==stored.length) {
+					byte[] bigger = new byte[stored.length * 2];
+					System.arraycopy(stored, 0, bigger, 0, storedLength);
+					stored = bigger;
+				}
+				storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+			}
+		}
+		index.add(new long[] {blockFirstOffset, blockLastOffset, position, blockCount});
+		out.writeInt(blockCount);
+		out.writeInt(raw.length);
+		out.writeInt(storedLength);
+		out.write(stored, 0, storedLength);
+		position += 12 + storedLength;
+		blockBytes.reset();
+		blockCount = 0;
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return Bytes written so far
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Write the last block and the index, and move the file into place
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (blockCount > 0) {
+				writeBlock();
+			}
+			long indexPosition = position;
+			for (long[] entry : index) {
+				out.writeLong(entry[0]);
+				out.writeLong(entry[1]);
+				out.writeLong(entry[2]);
+				out.writeInt((int)entry[3]);
+			}
+			out.writeLong(indexPosition);
+			out.writeInt(index.size());
+			out.writeLong(recordCount);
+			out.write(INDEX_MAGIC);
+			position += (long)index.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE;
+			out.close();
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			abort();
+			throw new SodacanException("Unable to write " + path, e);
+		} finally {
+			if (deflater!=null) {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Give up, removing the partial file
+	 */
+	public void abort() {
+		closed = true;
+		try {
+			out.close();
+		} catch (IOException e) {
+			// Going away anyway
+		}
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			// Nothing more we can do
+		}
+		if (deflater!=null) {
+			deflater.end();
+			deflater = null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>A simulation scenario, one statement per line. Blank lines and lines starting with '#' are skipped, and
+ * anything after a '#' is a comment, except on a publish line where the value runs to the end of the line and
+ * may contain a '#' of its own.</p>
+ * <pre>
+ * run lamp1                                          # run this module
+ * follow lamp1-out                                   # also trace this topic
+ * 2023-03-01T06:00:00Z clock                         # just set the clock
+ * # publish a variable
+ * 2023-03-01T06:00:00Z publish switch1 state on
+ * 2023-03-01T06:00:00Z tick                          # one tick
+ * 2023-03-01T06:00:00Z tick 60 2023-03-02T06:00:00Z  # a tick every 60 seconds up to and including the time
+ * </pre>
+ * <p>Times are ISO instants, or a date and time without a zone which is taken as UTC.</p>
+ * @author John Churin
+ *
+ */
+public class Scenario {
+	private Set<String> modules = new LinkedHashSet<>();
+	private Set<String> topics = new LinkedHashSet<>();
+	private List<SimEvent> events = new ArrayList<>();
+
+	/**
+	 * Read a scenario file
+	 * @param path
+	 * @return The scenario
+	 */
+	public static Scenario load( Path path ) {
+		Scenario scenario = new Scenario();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine())!=null) {
+				lineNumber++;
+				try {
+					scenario.parse(line, lineNumber);
+				} catch (RuntimeException e) {
+					throw new SodacanException(path + " line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			throw new SodacanException("Unable to read scenario " + path, e);
+		}
+		return scenario;
+	}
+
+	protected void parse( String line, long sequence ) {
+		line = line.strip();
+		if (line.isEmpty() || line.startsWith("#")) {
+			return;
+		}
+		String[] words = line.split("\\s+", 5);
+		if (words.length < 2 || !"publish".equals(words[1])) {
+			int hash = line.indexOf('#');
+			if (hash >= 0) {
+				words = line.substring(0, hash).strip().split("\\s+", 5);
+			}
+		}
+		if ("run".equals(words[0])) {
+			need(words, 2, "run <module>");
+			modules.add(words[1]);
+			return;
+		}
+		if ("follow".equals(words[0])) {
+			need(words, 2, "follow <topic>");
+			topics.add(words[1]);
+			return;
+		}
+		need(words, 2, "<time> <action>");
+		Instant time = parseTime(words[0]);
+		switch (words[1]) {
+		case "clock":
+			events.add(SimEvent.clock(time, sequence));
+			break;
+		case "publish":
+			need(words, 5, "<time> publish <module> <variable> <value>");
+			events.add(SimEvent.publish(time, sequence, words[2], words[3], words[4]));
+			break;
+		case "tick":
+			if (words.length==2) {
+				events.add(SimEvent.tick(time, sequence, null, null));
+				break;
+			}
+			need(words, 4, "<time> tick [<seconds> <until>]");
+			long seconds = Long.parseLong(words[2]);
+			if (seconds < 1) {
+				throw new SodacanException("tick interval must be at least one second");
+			}
+			events.add(SimEvent.tick(time, sequence, Duration.ofSeconds(seconds), parseTime(words[3])));
+			break;
+		default:
+			throw new SodacanException("unknown action " + words[1]);
+		}
+	}
+
+	private void need( String[] words, int count, String form ) {
+		if (words.length < count) {
+			throw new SodacanException("expected " + form);
+		}
+	}
+
+	public static Instant parseTime( String time ) {
+		try {
+			return Instant.parse(time);
+		} catch (DateTimeParseException e) {
+			try {
+				return LocalDateTime.parse(time).toInstant(ZoneOffset.UTC);
+			} catch (DateTimeParseException e2) {
+				throw new SodacanException("invalid time " + time);
+			}
+		}
+	}
+
+	/**
+	 * @return Modules to run, in the order named
+	 */
+	public Set<String> getModules() {
+		return modules;
+	}
+
+	/**
+	 * @return Topics to trace besides those the modules subscribe to
+	 */
+	public Set<String> getTopics() {
+		return topics;
+	}
+
+	/**
+	 * @return Timed events in the order they appear, not yet in time order
+	 */
+	public List<SimEvent> getEvents() {
+		return events;
+	}
+}
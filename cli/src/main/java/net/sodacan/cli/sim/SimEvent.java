@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.sim;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * <p>One thing that happens at a point in virtual time during a simulation. Events at the same time
+ * happen in the order they appear in the scenario, so the events are always played in the same order. What the
+ * modules make of them is timed by their own threads, see {@link Simulator}.</p>
+ * @author John Churin
+ *
+ */
+public class SimEvent implements Comparable<SimEvent> {
+	public enum Kind {
+		/** Publish a variable as if from a module */
+		PUBLISH,
+		/** Send a tick */
+		TICK,
+		/** Only move the clock */
+		CLOCK
+	}
+
+	private final Instant time;
+	private final long sequence;
+	private final Kind kind;
+	private final String module;
+	private final String variable;
+	private final String value;
+	private final Duration every;
+	private final Instant until;
+
+	protected SimEvent( Instant time, long sequence, Kind kind, String module, String variable, String value, Duration every, Instant until ) {
+		this.time = time;
+		this.sequence = sequence;
+		this.kind = kind;
+		this.module = module;
+		this.variable = variable;
+		this.value = value;
+		this.every = every;
+		this.until = until;
+	}
+
+	public static SimEvent publish( Instant time, long sequence, String module, String variable, String value ) {
+		return new SimEvent(time, sequence, Kind.PUBLISH, module, variable, value, null, null);
+	}
+
+	public static SimEvent tick( Instant time, long sequence, Duration every, Instant until ) {
+		return new SimEvent(time, sequence, Kind.TICK, null, null, null, every, until);
+	}
+
+	public static SimEvent clock( Instant time, long sequence ) {
+		return new SimEvent(time, sequence, Kind.CLOCK, null, null, null, null, null);
+	}
+
+	/**
+	 * @return The next tick of a repeating tick, or null if there is none
+	 */
+	public SimEvent next() {
+		if (every==null) {
+			return null;
+		}
+		Instant nextTime = time.plus(every);
+		if (nextTime.isAfter(until)) {
+			return null;
+		}
+		return new SimEvent(nextTime, sequence, kind, module, variable, value, every, until);
+	}
+
+	public Instant getTime() {
+		return time;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getModule() {
+		return module;
+	}
+
+	public String getVariable() {
+		return variable;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public int compareTo( SimEvent other ) {
+		int c = time.compareTo(other.time);
+		if (c!=0) {
+			return c;
+		}
+		return Long.compare(sequence, other.sequence);
+	}
+
+	@Override
+	public String toString() {
+		switch (kind) {
+		case PUBLISH:
+			return "publish " + module + "." + variable + "=" + value;
+		case TICK:
+			return "tick";
+		default:
+			return "clock";
+		}
+	}
+}
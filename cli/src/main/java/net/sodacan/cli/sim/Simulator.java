@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.sim;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import net.sodacan.api.module.SimplePublisher;
+import net.sodacan.cli.follow.FollowManager;
+import net.sodacan.cli.follow.Subscription;
+import net.sodacan.cli.host.HostedModule;
+import net.sodacan.cli.host.ModuleHost;
+import net.sodacan.cli.trace.Span;
+import net.sodacan.cli.trace.Tracer;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.mode.Mode;
+import net.sodacan.mode.spi.ClockProvider;
+
+/**
+ * <p>Run a {@link Scenario} against a mode, which should be one with a static clock and a memory message bus
+ * and tick source, such as <code>test</code>.</p>
+ * <p>Events are taken from a queue in virtual time order by a single thread. Before each event the clock is set
+ * to its time. After each event the loop waits for the modules to go quiet, then prints the event followed by
+ * whatever showed up on the traced topics, sorted by topic and offset.</p>
+ * <p>The Runtime does not say when it has finished with an event, so quiet is a guess, see
+ * {@link ModuleHost#awaitQuiet(long, long)}: nothing moved for {@value #SETTLE_MILLIS} ms. A module slower than
+ * that can have its output printed after a later event, so two runs of a scenario may differ. An event whose
+ * wait gave up altogether is marked in the trace and counted in {@link #getTimeouts()}.</p>
+ * <p>Every event costs at least the settle time in real time, so play is limited to about 50 events a second:
+ * a month of ticks a minute apart, 43,200 events, takes more than 14 minutes.</p>
+ * @author John Churin
+ *
+ */
+public class Simulator {
+	public static final long SETTLE_MILLIS = 20;
+	private static final long QUIET_TIMEOUT_MILLIS = 30_000;
+	private static final Comparator<MBRecord> TRACE_ORDER = Comparator.comparing(MBRecord::getTopic).thenComparingLong(MBRecord::getOffset);
+
+	private Mode mode;
+	private Scenario scenario;
+	private PrintStream out;
+	private ConcurrentLinkedQueue<MBRecord> arrived = new ConcurrentLinkedQueue<>();
+	private long eventCount = 0;
+	private long recordCount = 0;
+	private long timeouts = 0;
+
+	public Simulator( Mode mode, Scenario scenario, PrintStream out ) {
+		this.mode = mode;
+		this.scenario = scenario;
+		this.out = out;
+	}
+
+	/**
+	 * Start the modules, play the events and stop the modules again
+	 * @param executorService Runs the module runtimes
+	 * @throws InterruptedException
+	 */
+	public void run( ExecutorService executorService ) throws InterruptedException {
+		ModuleHost host = ModuleHost.forMode(mode);
+		List<HostedModule> started = new ArrayList<>();
+		List<Subscription> subscriptions = new ArrayList<>();
+		try {
+			Set<String> topics = new LinkedHashSet<>();
+			for (String moduleName : scenario.getModules()) {
+				started.add(host.start(moduleName, executorService));
+				topics.addAll(ModuleHost.subscriberTopics(mode, moduleName));
+			}
+			topics.addAll(scenario.getTopics());
+			FollowManager followManager = FollowManager.forMode(mode);
+			for (String topic : topics) {
+				subscriptions.add(followManager.subscribe("simulate<" + topic, topic, FollowManager.Start.NOW, arrived::add));
+			}
+			// What is already in the topics is not part of this run
+			awaitQuiet(host);
+			arrived.clear();
+			play(host);
+		} finally {
+			for (Subscription subscription : subscriptions) {
+				subscription.cancel(false);
+			}
+			for (HostedModule hosted : started) {
+				hosted.cancel(true);
+			}
+		}
+	}
+
+	protected void play( ModuleHost host ) throws InterruptedException {
+		ClockProvider cp = mode.getClockProvider();
+		SimplePublisher publisher = new SimplePublisher(mode);
+		PriorityQueue<SimEvent> queue = new PriorityQueue<>(scenario.getEvents());
+		while (!queue.isEmpty()) {
+			SimEvent event = queue.poll();
+			boolean quiet;
+			ZonedDateTime time = event.getTime().atZone(ZoneOffset.UTC);
+			try (Span span = Tracer.span("simulate.event").attribute("event", event.toString())) {
+				cp.setClock(time.getYear(), time.getMonthValue(), time.getDayOfMonth(), time.getHour(), time.getMinute(), time.getSecond());
+				switch (event.getKind()) {
+				case PUBLISH:
+					publisher.publish(event.getModule(), event.getVariable(), event.getValue());
+					break;
+				case TICK:
+					mode.getTickSourceProvider().sendTick(event.getTime());
+					break;
+				default:
+					break;
+				}
+				quiet = awaitQuiet(host);
+			}
+			eventCount++;
+			if (quiet) {
+				out.println(event.getTime() + " > " + event);
+			} else {
+				out.println(event.getTime() + " > " + event + " (modules not quiet after " + QUIET_TIMEOUT_MILLIS + " ms)");
+			}
+			printArrived(event.getTime());
+			SimEvent next = event.next();
+			if (next!=null) {
+				queue.add(next);
+			}
+		}
+	}
+
+	private boolean awaitQuiet( ModuleHost host ) throws InterruptedException {
+		if (!host.awaitQuiet(SETTLE_MILLIS, QUIET_TIMEOUT_MILLIS)) {
+			timeouts++;
+			return false;
+		}
+		return true;
+	}
+
+	private void printArrived( Instant time ) {
+		List<MBRecord> records = new ArrayList<>();
+		MBRecord record;
+		while ((record = arrived.poll())!=null) {
+			records.add(record);
+		}
+		records.sort(TRACE_ORDER);
+		for (MBRecord rec : records) {
+			out.println(time + " < " + rec.getTopic() + "@" + rec.getOffset() + " " + rec.getKey() + "=" + rec.getValue());
+		}
+		recordCount += records.size();
+	}
+
+	/**
+	 * @return Events played, including each repeat of a tick
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * @return Records traced
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return Number of times the modules did not go quiet in time, the trace may then be out of step
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+}
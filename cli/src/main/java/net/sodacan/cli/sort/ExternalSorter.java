@@ -0,0 +1,328 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Sort lines of output by key, then by line. Entries are collected on the heap until the memory budget
+ * is reached. Each full buffer is sorted with <code>Arrays.parallelSort</code>, which uses the fork-join
+ * common pool, and written to a temporary run file. When the output is requested, a buffer that never
+ * overflowed is simply sorted in memory. Otherwise the runs are combined with a k-way merge that holds
+ * only one entry per run on the heap. At most {@link #MAX_FAN_IN} runs are open at once: when there are more,
+ * groups of them are first merged into longer runs, as many passes as it takes.</p>
+ * @author John Churin
+ *
+ */
+public class ExternalSorter implements Closeable {
+	// Rough per-entry overhead of the Entry and two String objects
+	private static final long ENTRY_OVERHEAD = 96;
+	// Run files open at once during a merge, well below the usual limit of 1024 file descriptors
+	public static final int MAX_FAN_IN = 64;
+	private static final int IO_BUFFER = 64 * 1024;
+	private static final Comparator<Entry> ORDER = Comparator.comparing((Entry e) -> e.key).thenComparing((e) -> e.line);
+
+	private long memoryBudget;
+	private Path tempDirectory;
+	private int maxFanIn;
+	private List<Entry> buffer = new ArrayList<>();
+	private long bufferBytes = 0;
+	private List<Path> runs = new ArrayList<>();
+	private long count = 0;
+
+	protected static class Entry {
+		final String key;
+		final String line;
+		Entry( String key, String line) {
+			this.key = key;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Create a sorter with run files in the default temporary directory
+	 * @param memoryBudget Approximate number of heap bytes to use before spilling a run
+	 */
+	public ExternalSorter( long memoryBudget ) {
+		this(memoryBudget, new File(System.getProperty("java.io.tmpdir")).toPath());
+	}
+
+	public ExternalSorter( long memoryBudget, Path tempDirectory ) {
+		this(memoryBudget, tempDirectory, MAX_FAN_IN);
+	}
+
+	/**
+	 * @param memoryBudget Approximate number of heap bytes to use before spilling a run, at least one
+	 * @param tempDirectory Where run files go
+	 * @param maxFanIn Number of runs merged at once, at least two
+	 */
+	public ExternalSorter( long memoryBudget, Path tempDirectory, int maxFanIn ) {
+		if (memoryBudget < 1) {
+			throw new SodacanException("A sort needs a memory budget of at least one byte");
+		}
+		if (maxFanIn < 2) {
+			throw new SodacanException("A sort must merge at least two runs at a time");
+		}
+		this.memoryBudget = memoryBudget;
+		this.tempDirectory = tempDirectory;
+		this.maxFanIn = maxFanIn;
+	}
+
+	/**
+	 * Add a line to be sorted
+	 * @param key The primary sort key
+	 * @param line The line to be output, also the secondary sort key
+	 */
+	public void add( String key, String line ) {
+		buffer.add(new Entry(key, line));
+		bufferBytes += ENTRY_OVERHEAD + 2L * (key.length() + line.length());
+		count++;
+		if (bufferBytes >= memoryBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * @return The number of lines added so far
+	 */
+	public long size() {
+		return count;
+	}
+
+	/**
+	 * @return The number of run files written so far
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	private Entry[] sortBuffer() {
+		Entry[] entries = buffer.toArray(new Entry[buffer.size()]);
+		buffer = new ArrayList<>();
+		bufferBytes = 0;
+		Arrays.parallelSort(entries, ORDER);
+		return entries;
+	}
+
+	private void spill() {
+		if (buffer.isEmpty()) {
+			return;
+		}
+		Entry[] entries = sortBuffer();
+		Path run = newRun();
+		runs.add(run);
+		try (DataOutputStream out = openRun(run)) {
+			for (Entry entry : entries) {
+				writeString(out, entry.key);
+				writeString(out, entry.line);
+			}
+		} catch (IOException e) {
+			throw new SodacanException("Unable to write sort run " + run, e);
+		}
+	}
+
+	private Path newRun() {
+		try {
+			Path run = Files.createTempFile(tempDirectory, "soda-sort-", ".run");
+			run.toFile().deleteOnExit();
+			return run;
+		} catch (IOException e) {
+			throw new SodacanException("Unable to create a sort run in " + tempDirectory, e);
+		}
+	}
+
+	private static DataOutputStream openRun( Path run ) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER));
+	}
+
+	private static void writeString( DataOutputStream out, String s ) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString( DataInputStream in ) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Output the lines in sorted order. This can only be done once.
+	 * @param visitor Receives each line, returns false to stop
+	 */
+	public void sorted( Predicate<String> visitor ) {
+		if (runs.isEmpty()) {
+			for (Entry entry : sortBuffer()) {
+				if (!visitor.test(entry.line)) {
+					return;
+				}
+			}
+			return;
+		}
+		spill();
+		while (runs.size() > maxFanIn) {
+			mergePass();
+		}
+		merge(runs, (entry) -> visitor.test(entry.line));
+	}
+
+	/**
+	 * Merge each group of up to maxFanIn consecutive runs into one. Groups are kept in order, so ties
+	 * still go to the entry added first.
+	 */
+	private void mergePass() {
+		List<Path> merged = new ArrayList<>();
+		try {
+			for (int from = 0; from < runs.size(); from += maxFanIn) {
+				List<Path> group = runs.subList(from, Math.min(from + maxFanIn, runs.size()));
+				if (group.size()==1) {
+					merged.add(group.get(0));
+					continue;
+				}
+				Path run = newRun();
+				merged.add(run);
+				try (DataOutputStream out = openRun(run)) {
+					merge(group, (entry) -> {
+						try {
+							writeString(out, entry.key);
+							writeString(out, entry.line);
+						} catch (IOException e) {
+							throw new SodacanException("Unable to write sort run " + run, e);
+						}
+						return true;
+					});
+				} catch (IOException e) {
+					throw new SodacanException("Unable to write sort run " + run, e);
+				}
+				for (Path done : group) {
+					delete(done);
+				}
+			}
+		} catch (RuntimeException e) {
+			// The runs of this pass are not in runs yet, close wouldn't find them
+			for (Path run : merged) {
+				if (!runs.contains(run)) {
+					delete(run);
+				}
+			}
+			throw e;
+		}
+		runs = merged;
+	}
+
+	/**
+	 * A run file being merged, with the entry at the head of the run
+	 */
+	private static class Run implements Closeable {
+		final int index;
+		final DataInputStream in;
+		Entry head;
+
+		Run( int index, Path path ) throws IOException {
+			this.index = index;
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), IO_BUFFER));
+		}
+
+		boolean advance() throws IOException {
+			try {
+				String key = readString(in);
+				head = new Entry(key, readString(in));
+				return true;
+			} catch (EOFException e) {
+				head = null;
+				return false;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private void merge( List<Path> paths, Predicate<Entry> visitor ) {
+		// Ties go to the earlier run which keeps the sort stable
+		PriorityQueue<Run> queue = new PriorityQueue<>(paths.size(),
+				Comparator.comparing((Run r) -> r.head, ORDER).thenComparingInt((r) -> r.index));
+		List<Run> open = new ArrayList<>();
+		try {
+			for (int i = 0; i < paths.size(); i++) {
+				Run run = new Run(i, paths.get(i));
+				open.add(run);
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				if (!visitor.test(run.head)) {
+					return;
+				}
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+		} catch (IOException e) {
+			throw new SodacanException("Error merging sort runs", e);
+		} finally {
+			for (Run run : open) {
+				try {
+					run.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static void delete( Path run ) {
+		try {
+			Files.deleteIfExists(run);
+		} catch (IOException e) {
+			// deleteOnExit will try again
+		}
+	}
+
+	/**
+	 * Remove any run files
+	 */
+	@Override
+	public void close() {
+		for (Path run : runs) {
+			delete(run);
+		}
+		runs.clear();
+		buffer = new ArrayList<>();
+		bufferBytes = 0;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.stats;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>What a follow or a module runtime has been doing: how many records it has handled, when it last
+ * saw one, how long its callback takes and how much CPU the thread behind it has used. Recording is
+ * cheap and safe from any thread, sampling is done by whoever is watching.</p>
+ * @author John Churin
+ *
+ */
+public class ActivityStats {
+	private LongAdder records = new LongAdder();
+	private LatencyHistogram callbacks = new LatencyHistogram();
+	private volatile long lastEventMillis = 0;
+	private volatile Thread thread = null;
+	private long sampleRecords = 0;
+	private long sampleNanos = System.nanoTime();
+
+	/**
+	 * Count one record
+	 */
+	public void recordEvent() {
+		records.increment();
+		lastEventMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Count one record and how long its callback took
+	 * @param nanos Callback time
+	 */
+	public void recordCallback( long nanos ) {
+		recordEvent();
+		callbacks.record(nanos);
+	}
+
+	/**
+	 * @param thread The thread doing the work, for CPU time
+	 */
+	public void setThread( Thread thread ) {
+		this.thread = thread;
+	}
+
+	public long getRecords() {
+		return records.sum();
+	}
+
+	/**
+	 * @return Wall clock time of the last record, zero if none yet
+	 */
+	public long getLastEventMillis() {
+		return lastEventMillis;
+	}
+
+	/**
+	 * @return Callback latencies, empty when the work is not done in a callback
+	 */
+	public LatencyHistogram getCallbacks() {
+		return callbacks;
+	}
+
+	/**
+	 * @return CPU time of the thread behind this activity in nanoseconds, or -1 if it is not known,
+	 * for example for a virtual thread
+	 */
+	public long getCpuNanos() {
+		Thread t = thread;
+		if (t==null || !t.isAlive()) {
+			return -1;
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadCpuTimeSupported()) {
+			return -1;
+		}
+		return threads.getThreadCpuTime(t.getId());
+	}
+
+	/**
+	 * @return Records per second since the previous call of this method, or since this activity started
+	 */
+	public synchronized double sampleRate() {
+		long now = System.nanoTime();
+		long count = getRecords();
+		double seconds = (now - sampleNanos) / 1_000_000_000.0;
+		double rate = seconds > 0 ? (count - sampleRecords) / seconds : 0;
+		sampleNanos = now;
+		sampleRecords = count;
+		return rate;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A fixed-size, log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ * Values below 128 are counted exactly. Above that, each power of two is split into 64 buckets so that
+ * any reported value is within about 1.6% of the recorded value. Recording is lock-free and may be done
+ * from any number of threads.</p>
+ * @author John Churin
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+	private static final int BUCKETS = (64 - SUB_BITS) * HALF_COUNT + HALF_COUNT;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private LongAdder count = new LongAdder();
+	private LongAdder sum = new LongAdder();
+	private AtomicLong max = new AtomicLong();
+
+	private static int bucket( long value ) {
+		if (value < SUB_COUNT) {
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return shift * HALF_COUNT + (int)(value >>> shift);
+	}
+
+	/**
+	 * The value in the middle of a bucket
+	 * @param bucket
+	 * @return Representative value
+	 */
+	private static long valueOf( int bucket ) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int shift = bucket / HALF_COUNT - 1;
+		long sub = bucket % HALF_COUNT + HALF_COUNT;
+		return (sub << shift) + (1L << (shift - 1));
+	}
+
+	/**
+	 * Record one latency
+	 * @param nanos Latency in nanoseconds, negative values are recorded as zero
+	 */
+	public void record( long nanos ) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Add the contents of another histogram to this one
+	 * @param other
+	 */
+	public void add( LatencyHistogram other ) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c!=0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		count.add(other.getCount());
+		sum.add(other.sum.sum());
+		max.accumulateAndGet(other.getMax(), Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Sum of all recorded values in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = getCount();
+		return (n==0) ? 0 : (double)sum.sum() / n;
+	}
+
+	/**
+	 * Find the latency at or below which the given percentage of recorded values fall
+	 * @param percentile From 0 to 100
+	 * @return Latency in nanoseconds, zero if nothing has been recorded
+	 */
+	public long getValueAtPercentile( double percentile ) {
+		long n = getCount();
+		if (n==0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(valueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * A one-line summary in milliseconds
+	 * @return The summary
+	 */
+	public String format() {
+		return String.format("p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms mean=%.3fms",
+				millis(getValueAtPercentile(50)),
+				millis(getValueAtPercentile(90)),
+				millis(getValueAtPercentile(99)),
+				millis(getValueAtPercentile(99.9)),
+				millis(getMax()),
+				getMean() / 1_000_000.0);
+	}
+
+	private static double millis( long nanos ) {
+		return nanos / 1_000_000.0;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.stats;
+
+/**
+ * Something running in the background, a follow or a module, that can report on its activity.
+ * @author John Churin
+ *
+ */
+public interface Monitored {
+	/**
+	 * @return follow or module
+	 */
+	public String getKind();
+
+	public ActivityStats getActivity();
+
+	/**
+	 * @return Records received but not yet handled, or -1 if not known
+	 */
+	public long getPending();
+
+	/**
+	 * @return Records already on the topic, as far as its consumer has read, that are not handled yet, or -1 if not known
+	 */
+	public long getBehind();
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>One timed phase of a command. Spans nest: a span started while another is open on the same
+ * thread becomes its child. Closing a span ends it, so the usual form is try-with-resources.</p>
+ * @author John Churin
+ *
+ */
+public class Span implements AutoCloseable {
+	private String name;
+	private String traceId;
+	private String spanId;
+	private Span parent;
+	private List<Span> children = new ArrayList<>();
+	private Map<String, String> attributes = new LinkedHashMap<>();
+	private long startNanos;
+	private long endNanos = 0;
+	private long startEpochNanos;
+
+	protected Span( String name, String traceId, String spanId, Span parent ) {
+		this.name = name;
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parent = parent;
+		this.startNanos = System.nanoTime();
+		this.startEpochNanos = Tracer.epochNanos(startNanos);
+		if (parent!=null) {
+			parent.children.add(this);
+		}
+	}
+
+	/**
+	 * Add detail to the span, such as the module or topic it concerns
+	 * @return This span
+	 */
+	public Span attribute( String key, String value ) {
+		attributes.put(key, value);
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if (endNanos==0) {
+			endNanos = System.nanoTime();
+			Tracer.ended(this);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public String getSpanId() {
+		return spanId;
+	}
+
+	public Span getParent() {
+		return parent;
+	}
+
+	public List<Span> getChildren() {
+		return children;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public long getStartEpochNanos() {
+		return startEpochNanos;
+	}
+
+	public long getEndEpochNanos() {
+		return startEpochNanos + getDurationNanos();
+	}
+
+	/**
+	 * @return Time from start to end, or to now if the span is still open
+	 */
+	public long getDurationNanos() {
+		return ((endNanos==0) ? System.nanoTime() : endNanos) - startNanos;
+	}
+}
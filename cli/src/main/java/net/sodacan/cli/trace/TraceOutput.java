@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.trace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import net.sodacan.SodacanException;
+
+/**
+ * <p>Ways to show a finished trace: a timing tree for people, and OTLP JSON for tracing tools.
+ * The OTLP form is one <code>ExportTraceServiceRequest</code> per line, appended to the file, which is
+ * what the OpenTelemetry collector's file receiver reads. A daemon can keep appending to the same file.</p>
+ * @author John Churin
+ *
+ */
+public class TraceOutput {
+	private static final String SERVICE_NAME = "soda";
+	private static final String SCOPE_NAME = "net.sodacan.cli";
+	private static final int NAME_WIDTH = 48;
+
+	/**
+	 * Print the spans as an indented tree with their durations in milliseconds
+	 */
+	public static void printTree( Span root, PrintStream out ) {
+		StringBuilder sb = new StringBuilder();
+		appendTree(root, 0, root.getDurationNanos(), sb);
+		out.print(sb);
+		out.flush();
+	}
+
+	private static void appendTree( Span span, int depth, long totalNanos, StringBuilder sb ) {
+		StringBuilder label = new StringBuilder();
+		for (int x = 0; x < depth; x++) {
+			label.append("  ");
+		}
+		label.append(span.getName());
+		for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+			label.append(' ').append(attribute.getKey()).append('=').append(attribute.getValue());
+		}
+		double percent = (totalNanos==0) ? 0 : 100.0 * span.getDurationNanos() / totalNanos;
+		sb.append(String.format("%-" + NAME_WIDTH + "s %10.3f ms %5.1f%%\n", label, span.getDurationNanos() / 1_000_000.0, percent));
+		for (Span child : span.getChildren()) {
+			appendTree(child, depth + 1, totalNanos, sb);
+		}
+	}
+
+	/**
+	 * Append the trace to a file as one line of OTLP JSON
+	 */
+	public static void appendOtlp( Span root, Path path ) {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode request = mapper.createObjectNode();
+		ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+		ObjectNode resource = resourceSpans.putObject("resource");
+		addAttribute(resource.putArray("attributes"), "service.name", SERVICE_NAME);
+		ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+		scopeSpans.putObject("scope").put("name", SCOPE_NAME);
+		addSpan(scopeSpans.putArray("spans"), root);
+		try (OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			out.write((mapper.writeValueAsString(request) + "\n").getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new SodacanException("Unable to write trace to " + path, e);
+		}
+	}
+
+	private static void addSpan( ArrayNode spans, Span span ) {
+		ObjectNode node = spans.addObject();
+		node.put("traceId", span.getTraceId());
+		node.put("spanId", span.getSpanId());
+		if (span.getParent()!=null) {
+			node.put("parentSpanId", span.getParent().getSpanId());
+		}
+		node.put("name", span.getName());
+		// SPAN_KIND_INTERNAL
+		node.put("kind", 1);
+		// 64 bit integers are strings in OTLP JSON
+		node.put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()));
+		node.put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+		ArrayNode attributes = node.putArray("attributes");
+		for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+			addAttribute(attributes, attribute.getKey(), attribute.getValue());
+		}
+		for (Span child : span.getChildren()) {
+			addSpan(spans, child);
+		}
+	}
+
+	private static void addAttribute( ArrayNode attributes, String key, String value ) {
+		ObjectNode attribute = attributes.addObject();
+		attribute.put("key", key);
+		attribute.putObject("value").put("stringValue", value);
+	}
+}
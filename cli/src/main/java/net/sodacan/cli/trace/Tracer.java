@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Collects spans for the command running on the current thread. Tracing is off unless a trace has
+ * been started on the thread, and then {@link #span(String)} returns a span that does nothing, so phases
+ * can be wrapped unconditionally at almost no cost.</p>
+ * <pre>
+ * try (Span span = Tracer.span("ModuleContext.fetchModule").attribute("module", moduleName)) {
+ *     mctx.fetchModule(moduleName);
+ * }
+ * </pre>
+ * @author John Churin
+ *
+ */
+public class Tracer {
+	// Span times are nanoTime based for precision, this maps them onto the wall clock
+	private static final long nanoAnchor = System.nanoTime();
+	private static final long epochAnchor = System.currentTimeMillis() * 1_000_000L;
+	private static final ThreadLocal<Span> current = new ThreadLocal<>();
+	private static final Span NOOP = new Span("noop", null, null, null) {
+		@Override
+		public Span attribute(String key, String value) {
+			return this;
+		}
+		@Override
+		public void close() {
+		}
+	};
+
+	/**
+	 * Start a new trace on this thread
+	 * @param name Name of the root span, usually the command
+	 * @return The root span, which ends the trace when closed
+	 */
+	public static Span start( String name ) {
+		Span root = new Span(name, randomHex(16), randomHex(8), null);
+		current.set(root);
+		return root;
+	}
+
+	/**
+	 * Start a span within the trace of this thread
+	 * @param name Name of the phase
+	 * @return The span, or one that does nothing if no trace is active
+	 */
+	public static Span span( String name ) {
+		Span parent = current.get();
+		if (parent==null) {
+			return NOOP;
+		}
+		Span span = new Span(name, parent.getTraceId(), randomHex(8), parent);
+		current.set(span);
+		return span;
+	}
+
+	/**
+	 * @return true if a trace is active on this thread
+	 */
+	public static boolean isTracing() {
+		return current.get()!=null;
+	}
+
+	/**
+	 * Called when a span closes, its parent becomes current again
+	 */
+	protected static void ended( Span span ) {
+		if (current.get()==span) {
+			if (span.getParent()==null) {
+				current.remove();
+			} else {
+				current.set(span.getParent());
+			}
+		}
+	}
+
+	protected static long epochNanos( long nanoTime ) {
+		return epochAnchor + (nanoTime - nanoAnchor);
+	}
+
+	private static String randomHex( int bytes ) {
+		StringBuilder sb = new StringBuilder(bytes * 2);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int x = 0; x < bytes; x++) {
+			sb.append(String.format("%02x", random.nextInt(256)));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Resolving full and abbreviated command names
+ * @author John Churin
+ *
+ */
+public class CommandTrieTest {
+	private Command topic = new ActionCommand("topic", null, "");
+	private Command tick = new ActionCommand("tick", null, "");
+	private Command clock = new ActionCommand("clock", null, "");
+	private CommandTrie trie = new CommandTrie(List.of(topic, tick, clock));
+
+	@Test
+	public void fullNames() {
+		assertSame(topic, trie.resolve("topic"));
+		assertSame(tick, trie.resolve("tick"));
+		assertSame(clock, trie.resolve("clock"));
+	}
+
+	@Test
+	public void abbreviations() {
+		assertSame(topic, trie.resolve("to"));
+		assertSame(tick, trie.resolve("ti"));
+		assertSame(clock, trie.resolve("c"));
+	}
+
+	@Test
+	public void ambiguous() {
+		assertSame(CommandTrie.AMBIGUOUS, trie.resolve("t"));
+		assertSame(CommandTrie.AMBIGUOUS, trie.resolve(""));
+	}
+
+	@Test
+	public void noMatch() {
+		assertNull(trie.resolve("x"));
+		assertNull(trie.resolve("topics"));
+		assertNull(trie.resolve("Topic"));
+		assertNull(new CommandTrie(List.of()).resolve(""));
+	}
+
+	@Test
+	public void nameThatPrefixesAnother() {
+		Command top = new ActionCommand("top", null, "");
+		CommandTrie prefixed = new CommandTrie(List.of(topic, top));
+		// Same as Command.isMatch, "top" also matches "topic"
+		assertSame(CommandTrie.AMBIGUOUS, prefixed.resolve("top"));
+		assertSame(topic, prefixed.resolve("topi"));
+	}
+}
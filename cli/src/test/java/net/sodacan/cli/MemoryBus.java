@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+import net.sodacan.cli.segment.SegmentRecord;
+import net.sodacan.messagebus.MB;
+import net.sodacan.messagebus.MBRecord;
+import net.sodacan.messagebus.MBTopic;
+
+/**
+ * <p>A message bus for tests that keeps each topic as a list in memory. Offsets start at zero in each topic.
+ * A follow delivers the records from the requested offset, then the EOF marker, and ends.</p>
+ * @author John Churin
+ *
+ */
+public class MemoryBus implements MB {
+	private Map<String, List<MBRecord>> topics = new ConcurrentHashMap<>();
+
+	@Override
+	public boolean createTopic( String topicName, boolean compacted ) {
+		return topics.putIfAbsent(topicName, new ArrayList<>())==null;
+	}
+
+	@Override
+	public void deleteTopic( String topicName ) {
+		topics.remove(topicName);
+	}
+
+	@Override
+	public List<String> listTopics() {
+		return new ArrayList<>(topics.keySet());
+	}
+
+	@Override
+	public String describeTopic( String topicName ) {
+		return topicName;
+	}
+
+	@Override
+	public void produce( String topic, String key, String value ) {
+		List<MBRecord> records = topics.computeIfAbsent(topic, (t) -> new ArrayList<>());
+		synchronized (records) {
+			records.add(new SegmentRecord(topic, System.currentTimeMillis(), records.size(), key, value));
+		}
+	}
+
+	private List<MBRecord> copy( String topicName, long offset ) {
+		List<MBRecord> records = topics.getOrDefault(topicName, new ArrayList<>());
+		synchronized (records) {
+			return new ArrayList<>(records.subList((int)Math.min(offset, records.size()), records.size()));
+		}
+	}
+
+	@Override
+	public MBTopic openTopic( String topicName, long nextOffset ) {
+		return new MBTopic() {
+			@Override
+			public Map<String, MBRecord> snapshot() {
+				Map<String, MBRecord> latest = new HashMap<>();
+				for (MBRecord record : copy(topicName, nextOffset)) {
+					latest.put(record.getKey(), record);
+				}
+				return latest;
+			}
+
+			@Override
+			public Future<?> follow( Consumer<MBRecord> consumer ) {
+				FutureTask<Void> task = new FutureTask<>(() -> {
+					for (MBRecord record : copy(topicName, nextOffset)) {
+						consumer.accept(record);
+					}
+					consumer.accept(new SegmentRecord(topicName, 0, -1, null, null) {
+						@Override
+						public boolean isEOF() {
+							return true;
+						}
+					});
+					return null;
+				});
+				Thread thread = new Thread(task, "follow-" + topicName);
+				thread.setDaemon(true);
+				thread.start();
+				return task;
+			}
+		};
+	}
+}
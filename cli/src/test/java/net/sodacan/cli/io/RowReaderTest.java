@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sodacan.SodacanException;
+
+/**
+ * CSV and NDJSON rows
+ * @author John Churin
+ *
+ */
+public class RowReaderTest {
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("soda-rows-test", ".csv");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private RowReader open( String... lines ) throws IOException {
+		Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+		return RowReader.open(file.toString());
+	}
+
+	@Test
+	public void csvRows() throws IOException {
+		try (RowReader reader = open(
+				"module,variable,value",
+				"",
+				"# a comment",
+				"lamp1, state , on",
+				"\"lamp, kitchen\",level,\"say \"\"hi\"\"\"",
+				"lamp2,note,one, two, three")) {
+			assertArrayEquals(new String[] {"lamp1", "state", "on"}, reader.next());
+			assertArrayEquals(new String[] {"lamp, kitchen", "level", "say \"hi\""}, reader.next());
+			assertArrayEquals(new String[] {"lamp2", "note", "one, two, three"}, reader.next());
+			assertNull(reader.next());
+			assertEquals(3, reader.getRowCount());
+			assertEquals(6, reader.getLineNumber());
+		}
+	}
+
+	@Test
+	public void headerOnlySkippedOnFirstRow() throws IOException {
+		try (RowReader reader = open("lamp1,state,on", "module,variable,value")) {
+			assertArrayEquals(new String[] {"lamp1", "state", "on"}, reader.next());
+			assertArrayEquals(new String[] {"module", "variable", "value"}, reader.next());
+		}
+	}
+
+	@Test
+	public void jsonRows() throws IOException {
+		try (RowReader reader = open(
+				"{\"module\":\"lamp1\",\"variable\":\"state\",\"value\":\"on\"}",
+				"{\"module\":\"lamp1\",\"variable\":\"level\",\"value\":42}",
+				"{\"module\":\"lamp1\",\"variable\":\"config\",\"value\":{\"a\":[1,2]}}",
+				"lamp2,state,off")) {
+			assertArrayEquals(new String[] {"lamp1", "state", "on"}, reader.next());
+			assertArrayEquals(new String[] {"lamp1", "level", "42"}, reader.next());
+			assertArrayEquals(new String[] {"lamp1", "config", "{\"a\":[1,2]}"}, reader.next());
+			assertArrayEquals(new String[] {"lamp2", "state", "off"}, reader.next());
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void missingJsonFieldNamesTheLine() throws IOException {
+		try (RowReader reader = open("lamp1,state,on", "{\"module\":\"lamp1\",\"value\":\"on\"}")) {
+			reader.next();
+			SodacanException e = assertThrows(SodacanException.class, () -> reader.next());
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2: missing variable"));
+		}
+	}
+
+	@Test
+	public void tooFewColumns() throws IOException {
+		try (RowReader reader = open("lamp1,state")) {
+			assertThrows(SodacanException.class, () -> reader.next());
+		}
+	}
+
+	@Test
+	public void unterminatedQuote() throws IOException {
+		try (RowReader reader = open("lamp1,state,\"on")) {
+			SodacanException e = assertThrows(SodacanException.class, () -> reader.next());
+			assertTrue(e.getMessage(), e.getMessage().contains("unterminated quote"));
+		}
+	}
+
+	@Test
+	public void missingFile() {
+		assertThrows(SodacanException.class, () -> RowReader.open(file.resolveSibling("no-such-rows.csv").toString()));
+	}
+}
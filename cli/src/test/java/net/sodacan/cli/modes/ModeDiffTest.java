@@ -0,0 +1,141 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.modes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import net.sodacan.cli.MemoryBus;
+import net.sodacan.cli.reduce.SpillBudget;
+import net.sodacan.cli.sort.ExternalSorter;
+
+/**
+ * Pairing the topics of two modes and grouping the differences by key
+ * @author John Churin
+ *
+ */
+public class ModeDiffTest {
+
+	private static ModeDiff modeDiff( MemoryBus from, MemoryBus to ) {
+		// A small sort budget so that the keys of both sides are spread over several runs
+		return new ModeDiff(from, "dev", to, "prod", () -> new SpillBudget(1024 * 1024), () -> new ExternalSorter(2048));
+	}
+
+	private static List<String> diff( ModeDiff modeDiff, String fromTopic, String toTopic ) {
+		List<String> changes = new ArrayList<>();
+		modeDiff.diff(fromTopic, toTopic, (key, change) -> changes.add(change.getSymbol() + key));
+		return changes;
+	}
+
+	@Test
+	public void pairTopicsOnSeparateBuses() {
+		MemoryBus from = new MemoryBus();
+		MemoryBus to = new MemoryBus();
+		from.createTopic("dev-state", true);
+		from.createTopic("dev-clock", true);
+		from.createTopic("shared", true);
+		from.createTopic(ModeTopics.MODES, true);
+		to.createTopic("prod-state", true);
+		to.createTopic("prod-other", true);
+		to.createTopic(ModeTopics.MODES, true);
+		Map<String, String> expected = new TreeMap<>();
+		expected.put("dev-clock", "prod-clock");
+		expected.put("dev-other", "prod-other");
+		expected.put("dev-state", "prod-state");
+		expected.put("shared", "shared");
+		assertEquals(expected, modeDiff(from, to).pairTopics());
+	}
+
+	@Test
+	public void pairTopicsOnASharedBus() {
+		MemoryBus bus = new MemoryBus();
+		bus.createTopic("dev-state", true);
+		bus.createTopic("prod-state", true);
+		bus.createTopic("shared", true);
+		bus.createTopic(ModeTopics.MODES, true);
+		Map<String, String> expected = new TreeMap<>();
+		expected.put("dev-state", "prod-state");
+		assertEquals(expected, modeDiff(bus, bus).pairTopics());
+	}
+
+	@Test
+	public void changesAreGroupedByKey() {
+		MemoryBus from = new MemoryBus();
+		MemoryBus to = new MemoryBus();
+		List<String> expected = new ArrayList<>();
+		for (int k = 0; k < 400; k++) {
+			String key = String.format("key-%03d", k);
+			switch (k % 5) {
+			case 0:
+				// The same in both
+				from.produce("dev-state", key, "v" + k);
+				to.produce("prod-state", key, "v" + k);
+				break;
+			case 1:
+				from.produce("dev-state", key, "v" + k);
+				expected.add("+" + key);
+				break;
+			case 2:
+				to.produce("prod-state", key, "v" + k);
+				expected.add("-" + key);
+				break;
+			case 3:
+				from.produce("dev-state", key, "old");
+				from.produce("dev-state", key, "v" + k);
+				to.produce("prod-state", key, "v" + k + "!");
+				expected.add("~" + key);
+				break;
+			default:
+				// Deleted in the source, so it goes from the target
+				from.produce("dev-state", key, "v" + k);
+				from.produce("dev-state", key, null);
+				to.produce("prod-state", key, "v" + k);
+				expected.add("-" + key);
+			}
+		}
+		assertEquals(expected, diff(modeDiff(from, to), "dev-state", "prod-state"));
+	}
+
+	@Test
+	public void missingTargetTopicAddsEverything() {
+		MemoryBus from = new MemoryBus();
+		MemoryBus to = new MemoryBus();
+		from.produce("dev-state", "b", "2");
+		from.produce("dev-state", "a", "1");
+		List<String> expected = List.of("+a", "+b");
+		assertEquals(expected, diff(modeDiff(from, to), "dev-state", "prod-state"));
+	}
+
+	@Test
+	public void visitorCanStop() {
+		MemoryBus from = new MemoryBus();
+		MemoryBus to = new MemoryBus();
+		for (int k = 0; k < 100; k++) {
+			from.produce("dev-state", "key-" + k, "v");
+		}
+		List<String> changes = new ArrayList<>();
+		modeDiff(from, to).diff("dev-state", "prod-state", (key, change) -> {
+			changes.add(key);
+			return changes.size() < 3;
+		});
+		assertEquals(3, changes.size());
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * The off-heap key map, on the heap and spilled to disk
+ * @author John Churin
+ *
+ */
+public class CompactKeyMapTest {
+
+	private static void assertLatestPerKey( SpillBudget budget ) {
+		Map<String, Long> expected = new HashMap<>();
+		try (CompactKeyMap map = new CompactKeyMap(budget)) {
+			// Enough keys for the table to grow several times, each key written more than once
+			for (long offset = 0; offset < 60_000; offset++) {
+				String key = "module-" + (offset % 20_000) + "/ü";
+				long previous = map.put(key, offset);
+				Long old = expected.put(key, offset);
+				assertEquals(old==null ? CompactKeyMap.NO_VALUE : old, previous);
+			}
+			assertEquals(expected.size(), map.size());
+			for (Map.Entry<String, Long> entry : expected.entrySet()) {
+				assertEquals(entry.getKey(), (long)entry.getValue(), map.get(entry.getKey()));
+			}
+			assertEquals(CompactKeyMap.NO_VALUE, map.get("missing"));
+			assertEquals(40_000, map.minValue());
+			Map<String, Long> visited = new HashMap<>();
+			map.forEach((key, value) -> visited.put(key, value));
+			assertEquals(expected, visited);
+		}
+	}
+
+	@Test
+	public void latestPerKeyOnHeap() {
+		assertLatestPerKey(new SpillBudget(256L * 1024 * 1024));
+	}
+
+	@Test
+	public void latestPerKeySpilled() {
+		SpillBudget budget = new SpillBudget(0);
+		assertLatestPerKey(budget);
+		assertEquals(0, budget.getHeapUsed());
+	}
+
+	@Test
+	public void emptyMap() {
+		try (CompactKeyMap map = new CompactKeyMap(new SpillBudget(1024 * 1024))) {
+			assertEquals(0, map.size());
+			assertEquals(CompactKeyMap.NO_VALUE, map.minValue());
+			assertEquals(CompactKeyMap.NO_VALUE, map.get(""));
+		}
+	}
+}
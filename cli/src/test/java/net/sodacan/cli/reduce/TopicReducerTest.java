@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.reduce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import net.sodacan.cli.MemoryBus;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * Reducing a topic to the latest record of each key
+ * @author John Churin
+ *
+ */
+public class TopicReducerTest {
+	private static final String TOPIC = "test-state";
+
+	private static Map<String, MBRecord> reduce( MemoryBus mb, SpillBudget budget, long[] keys ) {
+		Map<String, MBRecord> winners = new TreeMap<>();
+		keys[0] = new TopicReducer(mb, TOPIC, budget).reduce((rec) -> {
+			if (winners.put(rec.getKey(), rec)!=null) {
+				throw new AssertionError("two winners for " + rec.getKey());
+			}
+			return true;
+		});
+		return winners;
+	}
+
+	@Test
+	public void latestPerKeyWithTombstones() {
+		MemoryBus mb = new MemoryBus();
+		mb.createTopic(TOPIC, true);
+		Map<String, String> expected = new TreeMap<>();
+		for (int r = 0; r < 5000; r++) {
+			String key = "key-" + (r % 300);
+			if (r % 7==0) {
+				mb.produce(TOPIC, key, null);
+				expected.remove(key);
+			} else {
+				String value = "value-" + r;
+				mb.produce(TOPIC, key, value);
+				expected.put(key, value);
+			}
+		}
+		for (SpillBudget budget : new SpillBudget[] {new SpillBudget(64L * 1024 * 1024), new SpillBudget(0)}) {
+			long[] keys = new long[1];
+			Map<String, MBRecord> winners = reduce(mb, budget, keys);
+			// Deleted keys are counted but not visited
+			assertEquals(300, keys[0]);
+			assertEquals(expected.size(), winners.size());
+			for (Map.Entry<String, String> entry : expected.entrySet()) {
+				assertEquals(entry.getValue(), winners.get(entry.getKey()).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void keyDeletedThenWrittenAgain() {
+		MemoryBus mb = new MemoryBus();
+		mb.produce(TOPIC, "a", "1");
+		mb.produce(TOPIC, "b", "1");
+		mb.produce(TOPIC, "a", null);
+		mb.produce(TOPIC, "b", null);
+		mb.produce(TOPIC, "a", "2");
+		long[] keys = new long[1];
+		Map<String, MBRecord> winners = reduce(mb, new SpillBudget(1024 * 1024), keys);
+		assertEquals(2, keys[0]);
+		assertEquals(1, winners.size());
+		assertEquals("2", winners.get("a").getValue());
+		assertEquals(4, winners.get("a").getOffset());
+	}
+
+	@Test
+	public void emptyTopic() {
+		MemoryBus mb = new MemoryBus();
+		mb.createTopic(TOPIC, true);
+		long[] keys = new long[1];
+		assertEquals(0, reduce(mb, new SpillBudget(1024 * 1024), keys).size());
+		assertEquals(0, keys[0]);
+	}
+
+	@Test
+	public void visitorCanStop() {
+		MemoryBus mb = new MemoryBus();
+		for (int r = 0; r < 100; r++) {
+			mb.produce(TOPIC, "key-" + r, "value");
+		}
+		List<MBRecord> visited = new ArrayList<>();
+		new TopicReducer(mb, TOPIC, new SpillBudget(1024 * 1024)).reduce((rec) -> {
+			visited.add(rec);
+			return visited.size() < 5;
+		});
+		assertEquals(5, visited.size());
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.segment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sodacan.SodacanException;
+import net.sodacan.messagebus.MBRecord;
+
+/**
+ * Round trips through the segment file format and the ways a damaged file is reported
+ * @author John Churin
+ *
+ */
+public class SegmentFileTest {
+	private static final String TOPIC = "test-topic";
+	// Magic, flags, topic name length and the name itself
+	private static final int HEADER_SIZE = 8 + 4 + 4 + TOPIC.length();
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("soda-segment-test");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>)paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Enough records for several blocks, with deleted keys, null keys and characters outside ASCII
+	 */
+	private List<MBRecord> records( int count ) {
+		List<MBRecord> records = new ArrayList<>(count);
+		char[] filler = new char[2000];
+		Arrays.fill(filler, 'x');
+		for (int r = 0; r < count; r++) {
+			String key = (r % 211==0) ? null : "key-" + (r % 500);
+			String value = (r % 97==0) ? null : "value " + r + " ü€ " + new String(filler, 0, r % filler.length);
+			records.add(new SegmentRecord(TOPIC, 1_000_000L + r, 2L * r, key, value));
+		}
+		return records;
+	}
+
+	private Path write( List<MBRecord> records, boolean compressed ) {
+		Path file = directory.resolve(compressed ? "compressed.seg" : "plain.seg");
+		try (SegmentWriter writer = new SegmentWriter(file, TOPIC, compressed)) {
+			for (MBRecord record : records) {
+				writer.write(record);
+			}
+			assertEquals(records.size(), writer.getRecordCount());
+		}
+		return file;
+	}
+
+	private void assertRoundTrip( boolean compressed ) {
+		List<MBRecord> written = records(3000);
+		Path file = write(written, compressed);
+		List<MBRecord> read = new ArrayList<>();
+		try (SegmentReader reader = new SegmentReader(file)) {
+			assertEquals(TOPIC, reader.getTopicName());
+			assertEquals(compressed, reader.isCompressed());
+			assertEquals(written.size(), reader.getRecordCount());
+			assertTrue("expected more than one block", reader.getBlockCount() > 1);
+			assertEquals(written.size(), reader.read((rec) -> read.add(rec)));
+		}
+		assertEquals(written.size(), read.size());
+		for (int r = 0; r < written.size(); r++) {
+			MBRecord expected = written.get(r);
+			MBRecord actual = read.get(r);
+			assertEquals(TOPIC, actual.getTopic());
+			assertEquals(expected.getOffset(), actual.getOffset());
+			assertEquals(expected.getTimestamp(), actual.getTimestamp());
+			assertEquals(expected.getKey(), actual.getKey());
+			assertEquals(expected.getValue(), actual.getValue());
+			assertFalse(actual.isEOF());
+		}
+	}
+
+	@Test
+	public void roundTripUncompressed() {
+		assertRoundTrip(false);
+	}
+
+	@Test
+	public void roundTripCompressed() {
+		assertRoundTrip(true);
+	}
+
+	@Test
+	public void compressionMakesTheFileSmaller() throws IOException {
+		List<MBRecord> records = records(3000);
+		assertTrue(Files.size(write(records, true)) < Files.size(write(records, false)) / 4);
+	}
+
+	@Test
+	public void emptySegment() {
+		Path file = write(new ArrayList<>(), true);
+		try (SegmentReader reader = new SegmentReader(file)) {
+			assertEquals(0, reader.getRecordCount());
+			assertEquals(0, reader.getBlockCount());
+			assertEquals(0, reader.read((rec) -> true));
+		}
+	}
+
+	@Test
+	public void readStopsWhenTheVisitorDoes() {
+		Path file = write(records(3000), false);
+		List<MBRecord> read = new ArrayList<>();
+		try (SegmentReader reader = new SegmentReader(file)) {
+			long count = reader.read((rec) -> {
+				read.add(rec);
+				return read.size() < 10;
+			});
+			assertEquals(9, count);
+		}
+		assertEquals(10, read.size());
+	}
+
+	@Test
+	public void truncatedFileIsRefused() throws IOException {
+		for (boolean compressed : new boolean[] {false, true}) {
+			Path file = write(records(3000), compressed);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() / 2);
+			}
+			assertThrows(SodacanException.class, () -> new SegmentReader(file));
+		}
+	}
+
+	@Test
+	public void fileWithoutAnIndexIsRefused() throws IOException {
+		Path file = directory.resolve("short.seg");
+		Files.write(file, new byte[] {'S', 'O', 'D', 'A'});
+		assertThrows(SodacanException.class, () -> new SegmentReader(file));
+	}
+
+	@Test
+	public void otherFileIsRefused() throws IOException {
+		Path file = directory.resolve("other.seg");
+		byte[] bytes = new byte[4096];
+		Arrays.fill(bytes, (byte)'?');
+		Files.write(file, bytes);
+		assertThrows(SodacanException.class, () -> new SegmentReader(file));
+	}
+
+	@Test
+	public void damagedBlockHeaderIsReported() throws IOException {
+		Path file = write(records(3000), false);
+		// The stored length of the first block
+		overwrite(file, HEADER_SIZE + 8, ByteBuffer.allocate(4).putInt(12345).flip());
+		try (SegmentReader reader = new SegmentReader(file)) {
+			assertThrows(SodacanException.class, () -> reader.read((rec) -> true));
+		}
+	}
+
+	@Test
+	public void damagedCompressedBlockIsReported() throws IOException {
+		Path file = write(records(3000), true);
+		byte[] garbage = new byte[256];
+		Arrays.fill(garbage, (byte)0xff);
+		overwrite(file, HEADER_SIZE + 12 + 16, ByteBuffer.wrap(garbage));
+		try (SegmentReader reader = new SegmentReader(file)) {
+			assertThrows(SodacanException.class, () -> reader.read((rec) -> true));
+		}
+	}
+
+	@Test
+	public void abortLeavesNothingBehind() throws IOException {
+		Path file = directory.resolve("aborted.seg");
+		SegmentWriter writer = new SegmentWriter(file, TOPIC, true);
+		for (MBRecord record : records(100)) {
+			writer.write(record);
+		}
+		writer.abort();
+		writer.close();
+		try (Stream<Path> paths = Files.list(directory)) {
+			assertEquals(0, paths.count());
+		}
+	}
+
+	private static void overwrite( Path file, long position, ByteBuffer bytes ) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(bytes, position);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sodacan.SodacanException;
+
+/**
+ * Sorting in memory and across run files, including merges that take more than one pass
+ * @author John Churin
+ *
+ */
+public class ExternalSorterTest {
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("soda-sort-test");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>)paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Add random entries to the sorter
+	 * @return The entries as key and line pairs, in the order added
+	 */
+	private static List<String[]> fill( ExternalSorter sorter, int count ) {
+		Random random = new Random(count);
+		List<String[]> entries = new ArrayList<>(count);
+		for (int e = 0; e < count; e++) {
+			String key = "key-" + random.nextInt(count / 10 + 1);
+			String line = key + "," + random.nextInt(1000) + ",ü";
+			entries.add(new String[] {key, line});
+			sorter.add(key, line);
+		}
+		return entries;
+	}
+
+	private static void assertSorted( List<String[]> entries, ExternalSorter sorter ) {
+		entries.sort(Comparator.comparing((String[] e) -> e[0]).thenComparing((e) -> e[1]));
+		List<String> lines = new ArrayList<>();
+		sorter.sorted((line) -> lines.add(line));
+		assertEquals(entries.size(), lines.size());
+		for (int e = 0; e < entries.size(); e++) {
+			assertEquals(entries.get(e)[1], lines.get(e));
+		}
+	}
+
+	private long runFiles() throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.count();
+		}
+	}
+
+	@Test
+	public void sortsInMemory() throws IOException {
+		try (ExternalSorter sorter = new ExternalSorter(64L * 1024 * 1024, directory)) {
+			List<String[]> entries = fill(sorter, 1000);
+			assertEquals(0, sorter.getRunCount());
+			assertEquals(1000, sorter.size());
+			assertSorted(entries, sorter);
+			assertEquals(0, runFiles());
+		}
+	}
+
+	@Test
+	public void mergesRunsInOrder() throws IOException {
+		try (ExternalSorter sorter = new ExternalSorter(32 * 1024, directory)) {
+			List<String[]> entries = fill(sorter, 5000);
+			assertTrue(sorter.getRunCount() > 1);
+			assertTrue(sorter.getRunCount() < ExternalSorter.MAX_FAN_IN);
+			assertSorted(entries, sorter);
+		}
+		assertEquals(0, runFiles());
+	}
+
+	@Test
+	public void mergesInPassesWhenThereAreTooManyRuns() throws IOException {
+		try (ExternalSorter sorter = new ExternalSorter(1000, directory, 3)) {
+			List<String[]> entries = fill(sorter, 5000);
+			// More than 3 x 3 x 3 runs needs at least three passes before the last merge
+			assertTrue(sorter.getRunCount() > 27);
+			assertSorted(entries, sorter);
+			assertTrue(sorter.getRunCount() <= 3);
+			assertEquals(sorter.getRunCount(), runFiles());
+		}
+		assertEquals(0, runFiles());
+	}
+
+	@Test
+	public void visitorCanStop() {
+		try (ExternalSorter sorter = new ExternalSorter(1000, directory, 4)) {
+			fill(sorter, 2000);
+			List<String> lines = new ArrayList<>();
+			sorter.sorted((line) -> {
+				lines.add(line);
+				return lines.size() < 10;
+			});
+			assertEquals(10, lines.size());
+		}
+	}
+
+	@Test
+	public void emptySorter() {
+		try (ExternalSorter sorter = new ExternalSorter(1000, directory)) {
+			sorter.sorted((line) -> {
+				throw new AssertionError("nothing to sort");
+			});
+		}
+	}
+
+	@Test
+	public void budgetAndFanInMustBeUsable() {
+		assertThrows(SodacanException.class, () -> new ExternalSorter(0, directory));
+		assertThrows(SodacanException.class, () -> new ExternalSorter(1000, directory, 1));
+	}
+}
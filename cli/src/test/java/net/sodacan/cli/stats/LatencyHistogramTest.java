@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 John M Churin
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sodacan.cli.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Percentiles from the log-linear histogram
+ * @author John Churin
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void emptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(0.0, histogram.getMean(), 0.0);
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 0; value < 100; value++) {
+			histogram.record(value);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(49, histogram.getValueAtPercentile(50));
+		assertEquals(98, histogram.getValueAtPercentile(99));
+		assertEquals(99, histogram.getValueAtPercentile(100));
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(99, histogram.getMax());
+		assertEquals(4950, histogram.getSum());
+		assertEquals(49.5, histogram.getMean(), 0.0);
+	}
+
+	@Test
+	public void largeValuesAreClose() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1_000_000; value++) {
+			histogram.record(value * 1000);
+		}
+		for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+			double expected = percentile * 10_000 * 1000;
+			double actual = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + " was " + actual, Math.abs(actual - expected) / expected < 0.016);
+		}
+		assertEquals(1_000_000_000L, histogram.getMax());
+		assertEquals(1_000_000_000L, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void negativeValuesCountAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(100));
+		assertEquals(0, histogram.getSum());
+	}
+
+	@Test
+	public void addCombinesHistograms() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		for (long value = 0; value < 50; value++) {
+			a.record(value);
+			b.record(value + 50);
+		}
+		a.add(b);
+		assertEquals(100, a.getCount());
+		assertEquals(99, a.getMax());
+		assertEquals(49, a.getValueAtPercentile(50));
+		assertEquals(4950, a.getSum());
+		assertEquals(50, b.getCount());
+	}
+}